@@ -0,0 +1,66 @@
+/*
+ * @(#)Candidate.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+/**
+ * A sentence suggested as continuation, together with its score.
+ */
+public class Candidate
+{
+  private final Sentence sentence;
+  private final double score;
+
+  private Candidate()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  public Candidate(final Sentence sentence, final double score)
+  {
+    if (sentence == null) {
+      throw new NullPointerException("sentence");
+    }
+    this.sentence = sentence;
+    this.score = score;
+  }
+
+  public Sentence getSentence()
+  {
+    return sentence;
+  }
+
+  public double getScore()
+  {
+    return score;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "Candidate[sentence=" + sentence + ", score=" + score + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
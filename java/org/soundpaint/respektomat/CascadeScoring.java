@@ -0,0 +1,200 @@
+/*
+ * @(#)CascadeScoring.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Two-stage alternative to MatchScoring.scoreAll() for large corpora,
+ * selected by Config.CASCADE_RANKING.  The first stage only walks the
+ * postings of the exact tokens of the incomplete sentence, without
+ * any fuzzy expansion, and ranks the sentences touched by the sum of
+ * inverse document frequency times term frequency times length norm
+ * of these tokens.  The second stage scores the best
+ * Config.CASCADE_CANDIDATES (at least k) of them exactly like
+ * scoreAll(), i.e. with all fuzzy matches of the expanded query, plus
+ * history penalty, see MatchScoring.scoreCandidates().  Sentences that
+ * only share fuzzy matches with the query, but none of its exact
+ * tokens, are thus missed, unless the query does not contain any
+ * indexed word at all; then, the whole corpus is scored by
+ * scoreAll().  The deadline-aware and the incremental scoring do not
+ * use the cascade.
+ */
+class CascadeScoring
+{
+  private final CompactIndex compactIndex;
+  private final VocabularyMatcher matcher;
+  private final MatchScoring matchScoring;
+  private final double[] inverseDocumentFrequencies;
+  private final double[] lengthNorms;
+  private final double[] accumulators;
+  private final int[] touched;
+  private final LongAdder cascadeQueries;
+  private final LongAdder cascadeFallbacks;
+  private final LongAdder cascadeRescues;
+
+  private CascadeScoring()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  /**
+   * @param tokensCounts The number of tokens of each sentence, indexed
+   * by sentence id.
+   */
+  CascadeScoring(final CompactIndex compactIndex,
+                 final VocabularyMatcher matcher,
+                 final MatchScoring matchScoring, final int[] tokensCounts)
+  {
+    if (compactIndex == null) {
+      throw new NullPointerException("compactIndex");
+    }
+    if (matcher == null) {
+      throw new NullPointerException("matcher");
+    }
+    if (matchScoring == null) {
+      throw new NullPointerException("matchScoring");
+    }
+    if (tokensCounts == null) {
+      throw new NullPointerException("tokensCounts");
+    }
+    this.compactIndex = compactIndex;
+    this.matcher = matcher;
+    this.matchScoring = matchScoring;
+    inverseDocumentFrequencies =
+      createInverseDocumentFrequencies(compactIndex);
+    lengthNorms = new double[tokensCounts.length];
+    for (int sentenceId = 0; sentenceId < lengthNorms.length; sentenceId++) {
+      lengthNorms[sentenceId] = 1.0 / tokensCounts[sentenceId];
+    }
+    accumulators = new double[tokensCounts.length];
+    touched = new int[tokensCounts.length];
+    cascadeQueries = new LongAdder();
+    cascadeFallbacks = new LongAdder();
+    cascadeRescues = new LongAdder();
+  }
+
+  /**
+   * Returns log(1 + N / df) for each token id, with N being the number
+   * of sentences and df the document frequency of the token, or 0.0
+   * for token ids that do not occur.  Stays positive even for tokens
+   * that occur in every sentence.
+   */
+  private static double[]
+    createInverseDocumentFrequencies(final CompactIndex compactIndex)
+  {
+    final double[] inverseDocumentFrequencies =
+      new double[compactIndex.getTokenIdsCount()];
+    for (int tokenId = 0; tokenId < inverseDocumentFrequencies.length;
+         tokenId++) {
+      final int documentFrequency = compactIndex.getDocumentFrequency(tokenId);
+      if (documentFrequency > 0) {
+        inverseDocumentFrequencies[tokenId] =
+          Math.log(1.0 + (double)compactIndex.getSentencesCount() /
+                   documentFrequency);
+      }
+    }
+    return inverseDocumentFrequencies;
+  }
+
+  /**
+   * Returns the k best sentences as continuation of the incomplete
+   * sentence, as found by the cascade.
+   */
+  TopKHeap score(final Sentence incompleteSentence, final int k,
+                 final History history)
+  {
+    int touchedCount = 0;
+    for (final Token token : incompleteSentence.getTokens()) {
+      if (token.getType() != Token.Type.WORD) {
+        continue;
+      }
+      final int tokenId = compactIndex.getTokenId(token);
+      if (tokenId < 0) {
+        continue;
+      }
+      final double inverseDocumentFrequency =
+        inverseDocumentFrequencies[tokenId];
+      final int postingsEnd = compactIndex.getPostingsEnd(tokenId);
+      for (int posting = compactIndex.getPostingsStart(tokenId);
+           posting < postingsEnd; posting++) {
+        final int sentenceId = compactIndex.getSentenceId(posting);
+        if (accumulators[sentenceId] == 0.0) {
+          touched[touchedCount++] = sentenceId;
+        }
+        accumulators[sentenceId] +=
+          inverseDocumentFrequency * compactIndex.getTermFrequency(posting) *
+          lengthNorms[sentenceId];
+      }
+    }
+    final List<TokenMatch> expandedQuery =
+      matcher.expandQuery(incompleteSentence);
+    cascadeQueries.increment();
+    if (touchedCount == 0) {
+      cascadeFallbacks.increment();
+      return matchScoring.scoreAll(expandedQuery, k, history);
+    }
+    final TopKHeap firstStage =
+      new TopKHeap(Math.min(Math.max(k, Config.CASCADE_CANDIDATES),
+                            touchedCount));
+    for (int i = 0; i < touchedCount; i++) {
+      final int sentenceId = touched[i];
+      firstStage.offer(sentenceId, accumulators[sentenceId]);
+      accumulators[sentenceId] = 0.0;
+    }
+    final int[] candidateIds = new int[firstStage.size()];
+    final int candidatesCount =
+      firstStage.drain(candidateIds, new double[candidateIds.length]);
+    final TopKHeap heap = new TopKHeap(k);
+    final int winnerRank =
+      matchScoring.scoreCandidates(expandedQuery, candidateIds,
+                                   candidatesCount, heap, history);
+    if (winnerRank >= Config.CASCADE_HEAD) {
+      cascadeRescues.increment();
+    }
+    matchScoring.offerUntouched(heap, expandedQuery, history);
+    return heap;
+  }
+
+  /**
+   * Returns the counters of the cascade in a single line.
+   */
+  String createStatistics()
+  {
+    return "cascade: " + cascadeQueries + " queries, " +
+      cascadeFallbacks + " without indexed word, " +
+      cascadeRescues + " winners reranked from beyond " +
+      "first stage rank " + Config.CASCADE_HEAD;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "CascadeScoring[#candidates=" + Config.CASCADE_CANDIDATES + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
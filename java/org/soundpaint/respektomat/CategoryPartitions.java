@@ -0,0 +1,117 @@
+/*
+ * @(#)CategoryPartitions.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.util.List;
+
+/**
+ * The ids of the sentences of a corpus, split by category, for
+ * ranking the best sentences of a category when there is no
+ * incomplete sentence to match.
+ */
+class CategoryPartitions
+{
+  private static final Sentence.Category[] CATEGORIES =
+    Sentence.Category.values();
+
+  private final int[][] partitions;
+
+  private CategoryPartitions()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  CategoryPartitions(final List<Sentence> sentences)
+  {
+    if (sentences == null) {
+      throw new NullPointerException("sentences");
+    }
+    partitions = createPartitions(sentences);
+  }
+
+  /**
+   * Returns the ids of the specified sentences, split by category and
+   * indexed by the ordinal of the category, in ascending order.
+   */
+  private static int[][] createPartitions(final List<Sentence> sentences)
+  {
+    final int[] sizes = new int[CATEGORIES.length];
+    for (final Sentence sentence : sentences) {
+      sizes[sentence.getCategory().ordinal()]++;
+    }
+    final int[][] partitions = new int[CATEGORIES.length][];
+    for (int ordinal = 0; ordinal < CATEGORIES.length; ordinal++) {
+      partitions[ordinal] = new int[sizes[ordinal]];
+      sizes[ordinal] = 0;
+    }
+    for (final Sentence sentence : sentences) {
+      final int ordinal = sentence.getCategory().ordinal();
+      partitions[ordinal][sizes[ordinal]++] = sentence.getIndexId();
+    }
+    return partitions;
+  }
+
+  /**
+   * Returns the k best sentences of the requested category, ranked
+   * like ReferenceScorer ranks all sentences without incomplete
+   * sentence, but visits only the partition of the requested
+   * category, as long as it provides k sentences that beat every
+   * sentence of any other category, whose score is at most
+   * -CATEGORY_BONUS.
+   */
+  TopKHeap score(final Sentence.Category category, final int k,
+                 final History history)
+  {
+    final TopKHeap heap = new TopKHeap(k);
+    for (int ordinal = 0; ordinal < partitions.length; ordinal++) {
+      if (CATEGORIES[ordinal] == category) {
+        for (final int sentenceId : partitions[ordinal]) {
+          heap.offer(sentenceId, ReferenceScorer.CATEGORY_BONUS +
+                     history.getScore(sentenceId));
+        }
+      }
+    }
+    if (!heap.isFull() ||
+        (heap.getWorstScore() <= -ReferenceScorer.CATEGORY_BONUS)) {
+      for (int ordinal = 0; ordinal < partitions.length; ordinal++) {
+        if (CATEGORIES[ordinal] != category) {
+          for (final int sentenceId : partitions[ordinal]) {
+            heap.offer(sentenceId, -ReferenceScorer.CATEGORY_BONUS +
+                       history.getScore(sentenceId));
+          }
+        }
+      }
+    }
+    return heap;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "CategoryPartitions[#categories=" + partitions.length + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -0,0 +1,351 @@
+/*
+ * @(#)CompactIndex.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Read-only, array-backed layout of a frozen index.  Tokens are
+ * identified by their ids in the global token dictionary, sentences
+ * by their dense index ids.  The postings of token t are stored in
+ * the range [getPostingsStart(t), getPostingsEnd(t)) of the postings
+ * arrays, ordered by ascending sentence id; the positions of posting
+ * p are stored in the range [getPositionsStart(p), getPositionsEnd(p))
+ * of the positions array, in ascending order.
+ */
+public class CompactIndex
+{
+  private final Token[] tokens;
+  private final List<Token> vocabulary;
+  private final Sentence[] sentences;
+  private final int[] postingsOffsets;
+  private final int[] postingSentenceIds;
+  private final int[] termFrequencies;
+  private final int[] totalFrequencies;
+  private final int[] positionsOffsets;
+  private final int[] positions;
+
+  private CompactIndex()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  /**
+   * @param subIndices The postings of each token, indexed by token
+   * id, with null entries for tokens that do not occur.
+   */
+  public CompactIndex(final List<IndexForToken> subIndices,
+                      final List<Sentence> sentences)
+  {
+    if (subIndices == null) {
+      throw new NullPointerException("subIndices");
+    }
+    if (sentences == null) {
+      throw new NullPointerException("sentences");
+    }
+    this.sentences = sentences.toArray(new Sentence[sentences.size()]);
+    tokens = new Token[subIndices.size()];
+    final List<Token> vocabulary = new ArrayList<Token>();
+    postingsOffsets = new int[tokens.length + 1];
+    totalFrequencies = new int[tokens.length];
+    int postingsCount = 0;
+    int positionsCount = 0;
+    for (int tokenId = 0; tokenId < tokens.length; tokenId++) {
+      postingsOffsets[tokenId] = postingsCount;
+      final IndexForToken indexForToken = subIndices.get(tokenId);
+      if (indexForToken != null) {
+        tokens[tokenId] = indexForToken.getToken();
+        vocabulary.add(indexForToken.getToken());
+        for (final IndexForTokenInSentence indexForTokenInSentence :
+               indexForToken.getIndexForTokenInSentence()) {
+          postingsCount++;
+          positionsCount += indexForTokenInSentence.count();
+          totalFrequencies[tokenId] += indexForTokenInSentence.count();
+        }
+      }
+    }
+    postingsOffsets[tokens.length] = postingsCount;
+    this.vocabulary = Collections.unmodifiableList(vocabulary);
+    postingSentenceIds = new int[postingsCount];
+    termFrequencies = new int[postingsCount];
+    positionsOffsets = new int[postingsCount + 1];
+    positions = new int[positionsCount];
+    final Comparator<IndexForTokenInSentence> bySentenceId =
+      new Comparator<IndexForTokenInSentence>() {
+        @Override
+        public int compare(final IndexForTokenInSentence posting1,
+                           final IndexForTokenInSentence posting2)
+        {
+          return Integer.compare(posting1.getSentence().getIndexId(),
+                                 posting2.getSentence().getIndexId());
+        }
+      };
+    int posting = 0;
+    int position = 0;
+    for (int tokenId = 0; tokenId < tokens.length; tokenId++) {
+      if (tokens[tokenId] == null) {
+        continue;
+      }
+      final IndexForTokenInSentence[] postings =
+        new IndexForTokenInSentence[postingsOffsets[tokenId + 1] -
+                                    postingsOffsets[tokenId]];
+      int i = 0;
+      for (final IndexForTokenInSentence indexForTokenInSentence :
+             subIndices.get(tokenId).getIndexForTokenInSentence()) {
+        postings[i++] = indexForTokenInSentence;
+      }
+      Arrays.sort(postings, bySentenceId);
+      for (final IndexForTokenInSentence indexForTokenInSentence : postings) {
+        postingSentenceIds[posting] =
+          indexForTokenInSentence.getSentence().getIndexId();
+        termFrequencies[posting] = indexForTokenInSentence.count();
+        positionsOffsets[posting] = position;
+        for (final int index : indexForTokenInSentence.getIndices()) {
+          positions[position++] = index;
+        }
+        posting++;
+      }
+    }
+    positionsOffsets[postingsCount] = position;
+  }
+
+  /**
+   * Returns the upper bound (exclusive) of token ids covered by this
+   * index.
+   */
+  public int getTokenIdsCount()
+  {
+    return tokens.length;
+  }
+
+  /**
+   * Returns the number of distinct tokens that occur in the index.
+   */
+  public int getTokensCount()
+  {
+    return vocabulary.size();
+  }
+
+  /**
+   * Returns the token with the specified id, or null, if the token
+   * does not occur in the index.
+   */
+  public Token getToken(final int tokenId)
+  {
+    return tokens[tokenId];
+  }
+
+  /**
+   * Returns the id of the specified token, or -1, if the token does
+   * not occur in the index.
+   */
+  public int getTokenId(final Token token)
+  {
+    final int tokenId = TokenDictionary.GLOBAL.lookupId(token);
+    return
+      (tokenId >= 0) && (tokenId < tokens.length) &&
+      (tokens[tokenId] != null) ? tokenId : -1;
+  }
+
+  /**
+   * Returns all tokens that occur in the index, in order of ascending
+   * token id.
+   */
+  public Iterable<Token> getTokens()
+  {
+    return vocabulary;
+  }
+
+  public int getSentencesCount()
+  {
+    return sentences.length;
+  }
+
+  public Sentence getSentence(final int sentenceId)
+  {
+    return sentences[sentenceId];
+  }
+
+  public int getPostingsStart(final int tokenId)
+  {
+    return postingsOffsets[tokenId];
+  }
+
+  public int getPostingsEnd(final int tokenId)
+  {
+    return postingsOffsets[tokenId + 1];
+  }
+
+  public int getSentenceId(final int posting)
+  {
+    return postingSentenceIds[posting];
+  }
+
+  /**
+   * Returns the number of sentences that contain the token with the
+   * specified id.
+   */
+  public int getDocumentFrequency(final int tokenId)
+  {
+    return postingsOffsets[tokenId + 1] - postingsOffsets[tokenId];
+  }
+
+  /**
+   * Returns the number of occurrences of the token with the specified
+   * id in all sentences.
+   */
+  public int getTotalFrequency(final int tokenId)
+  {
+    return totalFrequencies[tokenId];
+  }
+
+  public int getTermFrequency(final int posting)
+  {
+    return termFrequencies[posting];
+  }
+
+  public int getPositionsStart(final int posting)
+  {
+    return positionsOffsets[posting];
+  }
+
+  public int getPositionsEnd(final int posting)
+  {
+    return positionsOffsets[posting + 1];
+  }
+
+  public int getPosition(final int position)
+  {
+    return positions[position];
+  }
+
+  /**
+   * Returns the first posting of the specified token whose sentence id
+   * is not less than the specified one, or getPostingsEnd(tokenId), if
+   * there is no such posting.
+   */
+  public int findPostingsStart(final int tokenId, final int sentenceId)
+  {
+    final int posting =
+      Arrays.binarySearch(postingSentenceIds, postingsOffsets[tokenId],
+                          postingsOffsets[tokenId + 1], sentenceId);
+    return posting >= 0 ? posting : -posting - 1;
+  }
+
+  /**
+   * Returns the first posting in the range [fromPosting, toPosting)
+   * whose sentence id is not less than the specified one, or
+   * toPosting, if there is no such posting.  The range must lie
+   * within the postings of a single token.  Gallops forward from
+   * fromPosting before searching binarily, such that advancing a
+   * cursor by a few postings is cheap.
+   */
+  public int advancePosting(final int fromPosting, final int toPosting,
+                            final int sentenceId)
+  {
+    int low = fromPosting;
+    int step = 1;
+    while ((low < toPosting) && (postingSentenceIds[low] < sentenceId)) {
+      final int high = low + step;
+      if ((high >= toPosting) || (postingSentenceIds[high] >= sentenceId)) {
+        final int posting =
+          Arrays.binarySearch(postingSentenceIds, low + 1,
+                              Math.min(high, toPosting), sentenceId);
+        return posting >= 0 ? posting : -posting - 1;
+      }
+      low = high;
+      step <<= 1;
+    }
+    return low;
+  }
+
+  /**
+   * Returns the posting of the specified token for the specified
+   * sentence, or -1, if the token does not occur in that sentence.
+   */
+  public int findPosting(final int tokenId, final int sentenceId)
+  {
+    final int posting =
+      Arrays.binarySearch(postingSentenceIds, postingsOffsets[tokenId],
+                          postingsOffsets[tokenId + 1], sentenceId);
+    return posting >= 0 ? posting : -1;
+  }
+
+  /**
+   * Returns true if the specified position is contained in the
+   * positions of the specified posting.
+   */
+  public boolean hasPosition(final int posting, final int position)
+  {
+    return
+      Arrays.binarySearch(positions, positionsOffsets[posting],
+                          positionsOffsets[posting + 1], position) >= 0;
+  }
+
+  /**
+   * Returns the smallest distance between a position of the first and
+   * a different position of the second specified posting, or
+   * Integer.MAX_VALUE, if there is no such pair of positions.  Both
+   * postings should belong to the same sentence.  Merges the two
+   * ascending position lists in linear time.
+   */
+  public int getMinimumDistance(final int posting1, final int posting2)
+  {
+    int minimumDistance = Integer.MAX_VALUE;
+    int position1 = positionsOffsets[posting1];
+    int position2 = positionsOffsets[posting2];
+    final int end1 = positionsOffsets[posting1 + 1];
+    final int end2 = positionsOffsets[posting2 + 1];
+    while ((position1 < end1) && (position2 < end2)) {
+      final int index1 = positions[position1];
+      final int index2 = positions[position2];
+      if (index1 != index2) {
+        minimumDistance =
+          Math.min(minimumDistance, Math.abs(index1 - index2));
+      }
+      if (index1 < index2) {
+        position1++;
+      } else {
+        position2++;
+      }
+    }
+    return minimumDistance;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "CompactIndex[#tokens=" + vocabulary.size() +
+      ", #sentences=" + sentences.length +
+      ", #postings=" + postingSentenceIds.length +
+      ", #positions=" + positions.length + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -26,6 +26,46 @@ public class Config
   public static final String PC_PROMPT = "Respektomat";
   public static final String DATABASE_XML_FILE = "respektomat.txt";
   public static final String SENTENCE_FILTER = "Respekt";
+  public static final String NEIGHBORS_FILE = "respektomat.neighbors";
+  public static final boolean TERM_AT_A_TIME_SCORING =
+    !Boolean.getBoolean("respektomat.sentenceAtATimeScoring");
+  public static final boolean INCREMENTAL_INPUT =
+    Boolean.getBoolean("respektomat.incrementalInput");
+  public static final int MATCH_CACHE_CAPACITY = 4096;
+  public static final int RESPONSE_CACHE_CAPACITY =
+    Integer.getInteger("respektomat.responseCacheCapacity", 1024);
+  public static final ReferenceScorer.HighDfPolicy HIGH_DF_POLICY =
+    ReferenceScorer.HighDfPolicy.valueOf(System.getProperty(
+      "respektomat.highDfPolicy", "NONE"));
+  public static final int HIGH_DF_PERCENT =
+    Integer.getInteger("respektomat.highDfPercent", 40);
+  public static final boolean PROXIMITY_BONUS =
+    Boolean.getBoolean("respektomat.proximityBonus");
+  public static final boolean CASCADE_RANKING =
+    Boolean.getBoolean("respektomat.cascadeRanking");
+  public static final int CASCADE_CANDIDATES =
+    Integer.getInteger("respektomat.cascadeCandidates", 300);
+  public static final int CASCADE_HEAD =
+    Integer.getInteger("respektomat.cascadeHead", 10);
+  public static final int MIN_HASH_BANDS =
+    Integer.getInteger("respektomat.minHashBands", 0);
+  public static final int MIN_HASH_ROWS =
+    Integer.getInteger("respektomat.minHashRows", 2);
+  public static final boolean MAX_SCORE_PRUNING =
+    Boolean.getBoolean("respektomat.maxScorePruning");
+  public static final boolean PARALLEL_SCORING =
+    !Boolean.getBoolean("respektomat.sequentialScoring");
+  public static final int PARALLEL_SCORING_THRESHOLD =
+    Integer.getInteger("respektomat.parallelScoringThreshold", 100000);
+  public static final long RESPONSE_TIME_BUDGET_MILLIS =
+    Long.getLong("respektomat.responseTimeBudgetMillis", 0);
+  public static final Respektomat.Engine SCORING_ENGINE =
+    Respektomat.Engine.valueOf(System.getProperty(
+      "respektomat.scoringEngine", "REFERENCE"));
+  public static final int VECTOR_DIMENSION =
+    Integer.getInteger("respektomat.vectorDimension", 256);
+  public static final boolean VECTOR_VOCABULARY_FILTER =
+    Boolean.getBoolean("respektomat.vectorVocabularyFilter");
 }
 
 /*
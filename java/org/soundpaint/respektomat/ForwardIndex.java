@@ -0,0 +1,106 @@
+/*
+ * @(#)ForwardIndex.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+/**
+ * Sentence-major copy of the postings of a compact index: For each
+ * sentence, the ids of the distinct tokens it contains, in ascending
+ * order, together with their term frequencies.  The entries of
+ * sentence s are stored in the range [getEntriesStart(s),
+ * getEntriesEnd(s)).  Allows for scoring a few candidate sentences
+ * by their own tokens rather than by searching the postings of each
+ * query token.
+ */
+public class ForwardIndex
+{
+  private final int[] entriesOffsets;
+  private final int[] tokenIds;
+  private final int[] termFrequencies;
+
+  private ForwardIndex()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  public ForwardIndex(final CompactIndex compactIndex)
+  {
+    if (compactIndex == null) {
+      throw new NullPointerException("compactIndex");
+    }
+    final int sentencesCount = compactIndex.getSentencesCount();
+    final int tokenIdsCount = compactIndex.getTokenIdsCount();
+    entriesOffsets = new int[sentencesCount + 1];
+    final int postingsCount =
+      tokenIdsCount > 0 ? compactIndex.getPostingsEnd(tokenIdsCount - 1) : 0;
+    for (int posting = 0; posting < postingsCount; posting++) {
+      entriesOffsets[compactIndex.getSentenceId(posting) + 1]++;
+    }
+    for (int sentenceId = 0; sentenceId < sentencesCount; sentenceId++) {
+      entriesOffsets[sentenceId + 1] += entriesOffsets[sentenceId];
+    }
+    tokenIds = new int[postingsCount];
+    termFrequencies = new int[postingsCount];
+    final int[] cursors = new int[sentencesCount];
+    System.arraycopy(entriesOffsets, 0, cursors, 0, sentencesCount);
+    for (int tokenId = 0; tokenId < tokenIdsCount; tokenId++) {
+      final int postingsEnd = compactIndex.getPostingsEnd(tokenId);
+      for (int posting = compactIndex.getPostingsStart(tokenId);
+           posting < postingsEnd; posting++) {
+        final int entry = cursors[compactIndex.getSentenceId(posting)]++;
+        tokenIds[entry] = tokenId;
+        termFrequencies[entry] = compactIndex.getTermFrequency(posting);
+      }
+    }
+  }
+
+  public int getEntriesStart(final int sentenceId)
+  {
+    return entriesOffsets[sentenceId];
+  }
+
+  public int getEntriesEnd(final int sentenceId)
+  {
+    return entriesOffsets[sentenceId + 1];
+  }
+
+  public int getTokenId(final int entry)
+  {
+    return tokenIds[entry];
+  }
+
+  public int getTermFrequency(final int entry)
+  {
+    return termFrequencies[entry];
+  }
+
+  @Override
+  public String toString()
+  {
+    return "ForwardIndex[#sentences=" + (entriesOffsets.length - 1) +
+      ", #entries=" + tokenIds.length + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -0,0 +1,267 @@
+/*
+ * @(#)HashedVectorScorer.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fuzzy scorer that embeds each sentence as a fixed-width vector of
+ * hashed character n-grams and ranks the sentences by the cosine of
+ * their vectors and the vector of the incomplete sentence.
+ *
+ * The n-grams are all GRAM_LENGTH consecutive characters of each lower
+ * case word, framed by a start and an end marker, like the shingles of
+ * MinHashIndex, such that words that differ in a few characters still
+ * share most of their n-grams.  Each n-gram is hashed to one of
+ * dimension components and to a sign, which keeps the collisions of
+ * different n-grams unbiased.  Components are weighted by the inverse
+ * document frequency of the component, and sentence vectors are
+ * normalized to unit length.
+ *
+ * All vectors are stored in one contiguous matrix, in blocks of
+ * BLOCK_SIZE sentences; within a block, the values of each component
+ * are stored next to each other.  A query thus streams, for each
+ * non-zero component of its vector, one short contiguous run of
+ * values per block, while the scores of the block stay in a small
+ * array, and the matrix is visited in ascending address order.
+ * Unlike ReferenceScorer, the scores do not depend on the vocabulary, so
+ * there is no query expansion and no pointer chasing through the
+ * index.  The matrix is limited to Integer.MAX_VALUE values, i.e. to
+ * about 8 million sentences with dimension 256.
+ */
+public class HashedVectorScorer implements Scorer
+{
+  private static final int GRAM_LENGTH = 3;
+  private static final char WORD_START = '^';
+  private static final char WORD_END = '$';
+  private static final int BLOCK_SIZE = 1024;
+
+  private final Sentence[] sentences;
+  private final int dimension;
+  private final float[] componentWeights;
+  private final float[] matrix;
+
+  private HashedVectorScorer()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  /**
+   * @param sentences The corpus, with each sentence at the position of
+   * its index id.
+   */
+  public HashedVectorScorer(final List<Sentence> sentences,
+                            final int dimension)
+  {
+    if (sentences == null) {
+      throw new NullPointerException("sentences");
+    }
+    if (dimension <= 0) {
+      throw new IllegalArgumentException("dimension <= 0: " + dimension);
+    }
+    final long blocksCount =
+      ((long)sentences.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    final long matrixSize = blocksCount * BLOCK_SIZE * dimension;
+    if (matrixSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("matrix of " + sentences.size() +
+                                         " sentences with dimension " +
+                                         dimension + " exceeds " +
+                                         Integer.MAX_VALUE + " floats: " +
+                                         matrixSize);
+    }
+    this.sentences = sentences.toArray(new Sentence[sentences.size()]);
+    this.dimension = dimension;
+    final float[] vector = new float[dimension];
+    final boolean[] seen = new boolean[dimension];
+    final int[] documentFrequencies = new int[dimension];
+    for (final Sentence sentence : this.sentences) {
+      Arrays.fill(vector, 0.0f);
+      Arrays.fill(seen, false);
+      addGrams(sentence, vector, seen);
+      for (int component = 0; component < dimension; component++) {
+        if (seen[component]) {
+          documentFrequencies[component]++;
+        }
+      }
+    }
+    componentWeights = new float[dimension];
+    for (int component = 0; component < dimension; component++) {
+      if (documentFrequencies[component] > 0) {
+        componentWeights[component] =
+          (float)Math.log(1.0 + (double)this.sentences.length /
+                          documentFrequencies[component]);
+      }
+    }
+    // all offsets into the matrix are below matrixSize and thus fit
+    // into an int
+    matrix = new float[(int)matrixSize];
+    for (int sentenceId = 0; sentenceId < this.sentences.length;
+         sentenceId++) {
+      Arrays.fill(vector, 0.0f);
+      addGrams(this.sentences[sentenceId], vector, seen);
+      weigh(vector);
+      final int row = sentenceId % BLOCK_SIZE;
+      final int matrixStart = (sentenceId - row) * dimension;
+      for (int component = 0; component < dimension; component++) {
+        matrix[matrixStart + component * BLOCK_SIZE + row] = vector[component];
+      }
+    }
+  }
+
+  /**
+   * Adds the signed counts of the n-grams of the words of the
+   * specified sentence to the specified vector, and marks the
+   * components hit.
+   */
+  private void addGrams(final Sentence sentence, final float[] vector,
+                        final boolean[] seen)
+  {
+    for (final Token token : sentence.getTokens()) {
+      if (token.getType() != Token.Type.WORD) {
+        continue;
+      }
+      final String word =
+        WORD_START + token.getValue().toLowerCase() + WORD_END;
+      for (int start = 0; start + GRAM_LENGTH <= word.length(); start++) {
+        long gram = 0;
+        for (int i = start; i < start + GRAM_LENGTH; i++) {
+          gram = (gram << 16) | word.charAt(i);
+        }
+        final long hash = MinHashIndex.mix(gram);
+        final int component = (int)((hash >>> 1) % dimension);
+        vector[component] += (hash & 1) == 0 ? 1.0f : -1.0f;
+        seen[component] = true;
+      }
+    }
+  }
+
+  /**
+   * Multiplies each component of the specified vector with its weight
+   * and normalizes the vector to unit length, unless it is zero.
+   */
+  private void weigh(final float[] vector)
+  {
+    double norm = 0.0;
+    for (int component = 0; component < dimension; component++) {
+      vector[component] *= componentWeights[component];
+      norm += (double)vector[component] * vector[component];
+    }
+    if (norm > 0.0) {
+      final float scale = (float)(1.0 / Math.sqrt(norm));
+      for (int component = 0; component < dimension; component++) {
+        vector[component] *= scale;
+      }
+    }
+  }
+
+  /**
+   * Returns the k best continuations of the incomplete sentence by
+   * cosine similarity plus history penalty.  Without incomplete
+   * sentence, ranks the sentences of the requested category first,
+   * like ReferenceScorer.  May be called concurrently from multiple
+   * threads.
+   */
+  @Override
+  public List<Candidate> suggestCandidates(final Sentence incompleteSentence,
+                                           final Sentence.Category category,
+                                           final int k,
+                                           final History history)
+  {
+    if (history == null) {
+      throw new NullPointerException("history");
+    }
+    final List<Candidate> candidates = new ArrayList<Candidate>();
+    if ((sentences.length == 0) || (k <= 0)) {
+      return candidates;
+    }
+    final TopKHeap heap = new TopKHeap(Math.min(k, sentences.length));
+    if (incompleteSentence == null) {
+      for (int sentenceId = 0; sentenceId < sentences.length; sentenceId++) {
+        heap.offer(sentenceId,
+                   (sentences[sentenceId].getCategory() == category ?
+                    ReferenceScorer.CATEGORY_BONUS :
+                    -ReferenceScorer.CATEGORY_BONUS) +
+                   history.getScore(sentences[sentenceId]));
+      }
+    } else {
+      scoreBlocks(incompleteSentence, heap, history);
+    }
+    final int[] ids = new int[heap.size()];
+    final double[] scores = new double[heap.size()];
+    final int count = heap.drain(ids, scores);
+    for (int i = 0; i < count; i++) {
+      candidates.add(new Candidate(sentences[ids[i]], scores[i]));
+    }
+    return candidates;
+  }
+
+  private void scoreBlocks(final Sentence incompleteSentence,
+                           final TopKHeap heap, final History history)
+  {
+    final float[] query = new float[dimension];
+    addGrams(incompleteSentence, query, new boolean[dimension]);
+    weigh(query);
+    int nonZeroCount = 0;
+    final int[] components = new int[dimension];
+    final float[] values = new float[dimension];
+    for (int component = 0; component < dimension; component++) {
+      if (query[component] != 0.0f) {
+        components[nonZeroCount] = component;
+        values[nonZeroCount++] = query[component];
+      }
+    }
+    final float[] blockScores = new float[BLOCK_SIZE];
+    for (int blockStart = 0; blockStart < sentences.length;
+         blockStart += BLOCK_SIZE) {
+      Arrays.fill(blockScores, 0.0f);
+      final int matrixStart = blockStart * dimension;
+      for (int i = 0; i < nonZeroCount; i++) {
+        final float value = values[i];
+        final int offset = matrixStart + components[i] * BLOCK_SIZE;
+        for (int row = 0; row < BLOCK_SIZE; row++) {
+          blockScores[row] += value * matrix[offset + row];
+        }
+      }
+      final int rows = Math.min(BLOCK_SIZE, sentences.length - blockStart);
+      for (int row = 0; row < rows; row++) {
+        final int sentenceId = blockStart + row;
+        heap.offer(sentenceId, blockScores[row] +
+                   history.getScore(sentences[sentenceId]));
+      }
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return "HashedVectorScorer[dimension=" + dimension +
+      ", #sentences=" + sentences.length +
+      ", #floats=" + matrix.length + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
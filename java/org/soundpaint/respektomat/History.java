@@ -19,34 +19,171 @@
 
 package org.soundpaint.respektomat;
 
-import java.util.LinkedList;
+import java.util.Arrays;
 
+/**
+ * The last MAX_LENGTH distinct sentences suggested, most recent
+ * first, kept in a ring buffer of fixed capacity.  Suggesting a
+ * sentence once more moves it to the front.  A map from sentence id to
+ * slot of the ring buffer yields the position of a sentence, and thus
+ * its penalty, in constant time.  The penalty decreases linearly with
+ * the number of more recent distinct sentences and vanishes once the
+ * sentence has been pushed out of the ring buffer; it is never
+ * positive.  Sentences that have not been indexed are not tracked.
+ */
 public class History
 {
-  private static final int MAX_LENGTH = 100;
+  public static final int MAX_LENGTH = 100;
+  public static final double PENALTY_PER_POSITION = 1000.0;
+
+  private static final int MAX_CAPACITY = 1 << 26;
+  private static final int NO_SENTENCE = -1;
 
-  private LinkedList<Sentence> sentences;
+  private final int capacity;
+  private final int[] ring;
+  private final int[] keys;
+  private final int[] slots;
+  private final int mask;
+  private int head;
+  private int size;
 
   public History()
   {
-    sentences = new LinkedList<Sentence>();
+    this(MAX_LENGTH);
+  }
+
+  public History(final int capacity)
+  {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity <= 0: " + capacity);
+    }
+    if (capacity > MAX_CAPACITY) {
+      throw new IllegalArgumentException("capacity > " + MAX_CAPACITY + ": " +
+                                         capacity);
+    }
+    this.capacity = capacity;
+    ring = new int[capacity];
+    // open addressing with linear probing, at most an eighth full,
+    // since most lookups are for sentences not in the history and
+    // thus probe until the next free entry
+    final int tableSize = Integer.highestOneBit(8 * capacity - 1) << 1;
+    keys = new int[tableSize];
+    Arrays.fill(keys, NO_SENTENCE);
+    slots = new int[tableSize];
+    mask = tableSize - 1;
+    head = 0;
+    size = 0;
+  }
+
+  public int getCapacity()
+  {
+    return capacity;
+  }
+
+  private int hash(final int sentenceId)
+  {
+    final int hash = sentenceId * 0x9e3779b9;
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+  /**
+   * Returns the index into keys and slots of the entry of the
+   * sentence with the specified id, or of the empty entry where it
+   * would have to be inserted.
+   */
+  private int findEntry(final int sentenceId)
+  {
+    int entry = hash(sentenceId);
+    while ((keys[entry] != NO_SENTENCE) && (keys[entry] != sentenceId)) {
+      entry = (entry + 1) & mask;
+    }
+    return entry;
+  }
+
+  private void putSlot(final int sentenceId, final int slot)
+  {
+    final int entry = findEntry(sentenceId);
+    keys[entry] = sentenceId;
+    slots[entry] = slot;
+  }
+
+  /**
+   * Removes the entry of the sentence with the specified id, moving
+   * up the entries of its probe sequence that would otherwise become
+   * unreachable.
+   */
+  private void removeSlot(final int sentenceId)
+  {
+    int gap = findEntry(sentenceId);
+    keys[gap] = NO_SENTENCE;
+    for (int entry = (gap + 1) & mask; keys[entry] != NO_SENTENCE;
+         entry = (entry + 1) & mask) {
+      final int home = hash(keys[entry]);
+      if (((entry - home) & mask) >= ((entry - gap) & mask)) {
+        keys[gap] = keys[entry];
+        slots[gap] = slots[entry];
+        keys[entry] = NO_SENTENCE;
+        gap = entry;
+      }
+    }
   }
 
   public void add(final Sentence sentence)
   {
-    if (sentences.contains(sentence)) {
-      sentences.remove(sentence);
+    final int sentenceId = sentence.getIndexId();
+    if (sentenceId < 0) {
+      return;
+    }
+    final int entry = findEntry(sentenceId);
+    if (keys[entry] == sentenceId) {
+      // move to the front, shifting the more recent sentences back
+      for (int position = (slots[entry] - head + capacity) % capacity;
+           position > 0; position--) {
+        final int slot = (head + position) % capacity;
+        ring[slot] = ring[(slot + capacity - 1) % capacity];
+        putSlot(ring[slot], slot);
+      }
+    } else {
+      head = (head + capacity - 1) % capacity;
+      if (size == capacity) {
+        removeSlot(ring[head]);
+      } else {
+        size++;
+      }
     }
-    sentences.addFirst(sentence);
+    ring[head] = sentenceId;
+    putSlot(sentenceId, head);
   }
 
-  public double getScore(final Sentence sentence)
+  /**
+   * Returns the number of distinct sentences suggested more recently
+   * than the sentence with the specified id (0 for the latest one), or
+   * -1, if it is not among the last capacity distinct sentences.
+   */
+  private int getPosition(final int sentenceId)
   {
-    final int index = sentences.indexOf(sentence);
-    if (index == -1) {
+    if (sentenceId < 0) {
+      return -1;
+    }
+    final int entry = findEntry(sentenceId);
+    if (keys[entry] != sentenceId) {
+      return -1;
+    }
+    return (slots[entry] - head + capacity) % capacity;
+  }
+
+  public double getScore(final int sentenceId)
+  {
+    final int position = getPosition(sentenceId);
+    if (position < 0) {
       return 0.0;
     }
-    return -1000.0 * (MAX_LENGTH - index);
+    return -PENALTY_PER_POSITION * (capacity - position);
+  }
+
+  public double getScore(final Sentence sentence)
+  {
+    return getScore(sentence.getIndexId());
   }
 }
 
@@ -19,28 +19,35 @@
 
 package org.soundpaint.respektomat;
 
-import java.util.Map;
-import java.util.TreeMap;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Index
 {
-  private Map<Token, IndexForToken> subIndices;
+  private List<IndexForToken> subIndices;
+  private List<Sentence> sentences;
+  private CompactIndex compactIndex;
 
   public Index()
   {
-    subIndices = new TreeMap<Token, IndexForToken>();
+    subIndices = new ArrayList<IndexForToken>();
+    sentences = new ArrayList<Sentence>();
+    compactIndex = null;
   }
 
   private IndexForTokenInSentence addLocation(final Token token,
                                               final Sentence sentence,
                                               final int index)
   {
-    final IndexForToken indexForToken;
-    if (subIndices.containsKey(token)) {
-      indexForToken = subIndices.get(token);
-    } else {
+    final int tokenId = token.getId();
+    while (subIndices.size() <= tokenId) {
+      subIndices.add(null);
+    }
+    IndexForToken indexForToken = subIndices.get(tokenId);
+    if (indexForToken == null) {
       indexForToken = new IndexForToken(token);
-      subIndices.put(token, indexForToken);
+      subIndices.set(tokenId, indexForToken);
     }
     return indexForToken.addLocation(sentence, index);
   }
@@ -50,23 +57,149 @@ public class Index
     if (sentence == null) {
       throw new NullPointerException("sentence");
     }
+    if (isFrozen()) {
+      throw new IllegalStateException("index is frozen");
+    }
     if (Config.DEBUG) {
       System.out.println("add sentence: " + sentence);
     }
+    sentence.setIndexId(sentences.size());
+    sentences.add(sentence);
     int index = 0;
     for (final Token token : sentence.getTokens()) {
-      addLocation(token, sentence, index++);
+      final Token canonicalToken;
+      try {
+        canonicalToken = TokenDictionary.GLOBAL.intern(token);
+      } catch (final ParseException e) {
+        throw new IllegalArgumentException("invalid token in sentence: " +
+                                           token, e);
+      }
+      addLocation(canonicalToken, sentence, index++);
+    }
+  }
+
+  /**
+   * Converts the index into its compact, read-only layout and
+   * releases the tree-based structures used while building it.
+   * After freezing, no more sentences can be added.
+   */
+  public void freeze()
+  {
+    if (isFrozen()) {
+      throw new IllegalStateException("index already frozen");
     }
+    compactIndex = new CompactIndex(subIndices, sentences);
+    subIndices = null;
+    sentences = null;
+  }
+
+  /**
+   * Returns true, if the index has been frozen, such that it can only
+   * be read anymore.
+   */
+  public boolean isFrozen()
+  {
+    return compactIndex != null;
+  }
+
+  /**
+   * Returns the compact layout of this index, or null, if the index
+   * has not yet been frozen.
+   */
+  public CompactIndex getCompactIndex()
+  {
+    return compactIndex;
   }
 
   public Iterable<Token> getTokens()
   {
-    return subIndices.keySet();
+    if (compactIndex != null) {
+      return compactIndex.getTokens();
+    }
+    final List<Token> tokens = new ArrayList<Token>();
+    for (final IndexForToken indexForToken : subIndices) {
+      if (indexForToken != null) {
+        tokens.add(indexForToken.getToken());
+      }
+    }
+    return tokens;
+  }
+
+  public int getTokensCount()
+  {
+    if (compactIndex != null) {
+      return compactIndex.getTokensCount();
+    }
+    int tokensCount = 0;
+    for (final IndexForToken indexForToken : subIndices) {
+      if (indexForToken != null) {
+        tokensCount++;
+      }
+    }
+    return tokensCount;
+  }
+
+  public int getSentencesCount()
+  {
+    if (compactIndex != null) {
+      return compactIndex.getSentencesCount();
+    }
+    return sentences.size();
+  }
+
+  /**
+   * Returns the number of sentences that contain the specified token,
+   * or 0, if the token does not occur in the index.
+   */
+  public int getDocumentFrequency(final Token token)
+  {
+    if (compactIndex != null) {
+      final int tokenId = compactIndex.getTokenId(token);
+      return tokenId >= 0 ? compactIndex.getDocumentFrequency(tokenId) : 0;
+    }
+    final IndexForToken indexForToken = getIndexForToken(token);
+    int documentFrequency = 0;
+    if (indexForToken != null) {
+      for (final IndexForTokenInSentence indexForTokenInSentence :
+             indexForToken.getIndexForTokenInSentence()) {
+        documentFrequency++;
+      }
+    }
+    return documentFrequency;
+  }
+
+  /**
+   * Returns the number of occurrences of the specified token in all
+   * sentences, or 0, if the token does not occur in the index.
+   */
+  public int getTotalFrequency(final Token token)
+  {
+    if (compactIndex != null) {
+      final int tokenId = compactIndex.getTokenId(token);
+      return tokenId >= 0 ? compactIndex.getTotalFrequency(tokenId) : 0;
+    }
+    final IndexForToken indexForToken = getIndexForToken(token);
+    int totalFrequency = 0;
+    if (indexForToken != null) {
+      for (final IndexForTokenInSentence indexForTokenInSentence :
+             indexForToken.getIndexForTokenInSentence()) {
+        totalFrequency += indexForTokenInSentence.count();
+      }
+    }
+    return totalFrequency;
   }
 
   public IndexForToken getIndexForToken(final Token token)
   {
-    return subIndices.get(token);
+    if (compactIndex != null) {
+      final int tokenId = compactIndex.getTokenId(token);
+      return tokenId >= 0 ? new IndexForToken(compactIndex, tokenId) : null;
+    }
+    final int tokenId = TokenDictionary.GLOBAL.lookupId(token);
+    return
+      (tokenId >= 0) && (tokenId < subIndices.size()) ?
+      subIndices.get(tokenId) :
+      null;
   }
 
   private static final String NL = System.lineSeparator();
@@ -74,18 +207,10 @@ public class Index
   public String createSummary()
   {
     final StringBuilder sb = new StringBuilder();
-    sb.append("#tokens: " + subIndices.size() + NL);
-    for (final Token token : subIndices.keySet()) {
-      final IndexForToken indexForToken = subIndices.get(token);
-      int occursInSentences = 0;
-      int occursAltogether = 0;
-      for (final IndexForTokenInSentence indexForTokenInSentence :
-             indexForToken.getIndexForTokenInSentence()) {
-        occursInSentences++;
-        occursAltogether += indexForTokenInSentence.count();
-      }
-      sb.append("Token: " + token + ": #" + occursAltogether +
-                " in #" + occursInSentences + " sentences" + NL);
+    sb.append("#tokens: " + getTokensCount() + NL);
+    for (final Token token : getTokens()) {
+      sb.append("Token: " + token + ": #" + getTotalFrequency(token) +
+                " in #" + getDocumentFrequency(token) + " sentences" + NL);
     }
     return sb.toString();
   }
@@ -93,6 +218,9 @@ public class Index
   @Override
   public String toString()
   {
+    if (compactIndex != null) {
+      return "Index[compactIndex=" + compactIndex + "]";
+    }
     return "Index[subIndices=" + subIndices + "]";
   }
 }
@@ -19,13 +19,22 @@
 
 package org.soundpaint.respektomat;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
+/**
+ * Postings of a single token.  While the index is being built,
+ * postings are collected in a tree map; once the index is frozen,
+ * instances are read-only views onto the compact index.
+ */
 public class IndexForToken
 {
   private final Token token;
   private final Map<Sentence, IndexForTokenInSentence> subIndices;
+  private final CompactIndex compactIndex;
+  private final int tokenId;
 
   private IndexForToken()
   {
@@ -36,6 +45,19 @@ public class IndexForToken
   {
     this.token = token;
     subIndices = new TreeMap<Sentence, IndexForTokenInSentence>();
+    compactIndex = null;
+    tokenId = -1;
+  }
+
+  public IndexForToken(final CompactIndex compactIndex, final int tokenId)
+  {
+    if (compactIndex == null) {
+      throw new NullPointerException("compactIndex");
+    }
+    this.compactIndex = compactIndex;
+    this.tokenId = tokenId;
+    token = compactIndex.getToken(tokenId);
+    subIndices = null;
   }
 
   public Token getToken()
@@ -46,6 +68,9 @@ public class IndexForToken
   public IndexForTokenInSentence addLocation(final Sentence sentence,
                                              final int index)
   {
+    if (compactIndex != null) {
+      throw new IllegalStateException("index is frozen");
+    }
     final IndexForTokenInSentence indexForTokenInSentence;
     if (subIndices.containsKey(sentence)) {
       indexForTokenInSentence = subIndices.get(sentence);
@@ -60,11 +85,35 @@ public class IndexForToken
   public IndexForTokenInSentence
     getIndexForTokenInSentence(final Sentence sentence)
   {
+    if (compactIndex != null) {
+      final int sentenceId = sentence.getIndexId();
+      if ((sentenceId < 0) ||
+          (sentenceId >= compactIndex.getSentencesCount()) ||
+          (compactIndex.getSentence(sentenceId) != sentence)) {
+        return null;
+      }
+      final int posting = compactIndex.findPosting(tokenId, sentenceId);
+      return
+        posting >= 0 ?
+        new IndexForTokenInSentence(token, compactIndex, posting) :
+        null;
+    }
     return subIndices.get(sentence);
   }
 
   public Iterable<IndexForTokenInSentence> getIndexForTokenInSentence()
   {
+    if (compactIndex != null) {
+      final List<IndexForTokenInSentence> postings =
+        new ArrayList<IndexForTokenInSentence>();
+      final int end = compactIndex.getPostingsEnd(tokenId);
+      for (int posting = compactIndex.getPostingsStart(tokenId);
+           posting < end; posting++) {
+        postings.add(new IndexForTokenInSentence(token, compactIndex,
+                                                 posting));
+      }
+      return postings;
+    }
     return subIndices.values();
   }
 }
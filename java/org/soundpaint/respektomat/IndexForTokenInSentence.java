@@ -19,13 +19,23 @@
 
 package org.soundpaint.respektomat;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.TreeSet;
 
+/**
+ * Positions of a token within a sentence.  While the index is being
+ * built, positions are collected in a tree set; once the index is
+ * frozen, instances are read-only views onto a posting of the
+ * compact index.
+ */
 public class IndexForTokenInSentence
 {
   private final Token token;
   private final Sentence sentence;
   private final TreeSet<Integer> indices;
+  private final CompactIndex compactIndex;
+  private final int posting;
 
   private IndexForTokenInSentence()
   {
@@ -40,6 +50,22 @@ public class IndexForTokenInSentence
     this.token = token;
     this.sentence = sentence;
     indices = new TreeSet<Integer>();
+    compactIndex = null;
+    posting = -1;
+  }
+
+  public IndexForTokenInSentence(final Token token,
+                                 final CompactIndex compactIndex,
+                                 final int posting)
+  {
+    if (compactIndex == null) {
+      throw new NullPointerException("compactIndex");
+    }
+    this.token = token;
+    this.compactIndex = compactIndex;
+    this.posting = posting;
+    sentence = compactIndex.getSentence(compactIndex.getSentenceId(posting));
+    indices = null;
   }
 
   public Token getToken()
@@ -54,20 +80,38 @@ public class IndexForTokenInSentence
 
   public void addIndex(final int index)
   {
+    if (compactIndex != null) {
+      throw new IllegalStateException("index is frozen");
+    }
     indices.add(index);
   }
 
   public boolean hasIndex(final int index)
   {
+    if (compactIndex != null) {
+      return compactIndex.hasPosition(posting, index);
+    }
     return indices.contains(index);
   }
 
   public Iterable<Integer> getIndices()
   {
+    if (compactIndex != null) {
+      final List<Integer> indices = new ArrayList<Integer>();
+      final int end = compactIndex.getPositionsEnd(posting);
+      for (int position = compactIndex.getPositionsStart(posting);
+           position < end; position++) {
+        indices.add(compactIndex.getPosition(position));
+      }
+      return indices;
+    }
     return indices;
   }
 
   public int count() {
+    if (compactIndex != null) {
+      return compactIndex.getTermFrequency(posting);
+    }
     return indices.size();
   }
 }
@@ -0,0 +1,194 @@
+/*
+ * @(#)LfuCache.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * Thread-safe, size-bounded cache with least-frequently-used
+ * eviction.  Among entries with the same use count, the least
+ * recently used one is evicted first.  All operations run in constant
+ * time.
+ */
+public class LfuCache<K, V>
+{
+  private static class Entry<V>
+  {
+    private V value;
+    private int frequency;
+
+    private Entry(final V value)
+    {
+      this.value = value;
+      frequency = 1;
+    }
+  }
+
+  private final int capacity;
+  private final Map<K, Entry<V>> entries;
+  private final Map<Integer, LinkedHashSet<K>> keysByFrequency;
+  private int minFrequency;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  private LfuCache()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  public LfuCache(final int capacity)
+  {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity <= 0: " + capacity);
+    }
+    this.capacity = capacity;
+    entries = new HashMap<K, Entry<V>>();
+    keysByFrequency = new HashMap<Integer, LinkedHashSet<K>>();
+    minFrequency = 0;
+    hits = 0;
+    misses = 0;
+    evictions = 0;
+  }
+
+  private void addKey(final K key, final int frequency)
+  {
+    LinkedHashSet<K> keys = keysByFrequency.get(frequency);
+    if (keys == null) {
+      keys = new LinkedHashSet<K>();
+      keysByFrequency.put(frequency, keys);
+    }
+    keys.add(key);
+  }
+
+  private void touch(final K key, final Entry<V> entry)
+  {
+    final LinkedHashSet<K> keys = keysByFrequency.get(entry.frequency);
+    keys.remove(key);
+    if (keys.isEmpty()) {
+      keysByFrequency.remove(entry.frequency);
+      if (minFrequency == entry.frequency) {
+        minFrequency++;
+      }
+    }
+    entry.frequency++;
+    addKey(key, entry.frequency);
+  }
+
+  private void evict()
+  {
+    final LinkedHashSet<K> keys = keysByFrequency.get(minFrequency);
+    final Iterator<K> iterator = keys.iterator();
+    final K key = iterator.next();
+    iterator.remove();
+    if (keys.isEmpty()) {
+      keysByFrequency.remove(minFrequency);
+    }
+    entries.remove(key);
+    evictions++;
+  }
+
+  /**
+   * Returns the value cached for the specified key, or null, if there
+   * is none.  Counts as a hit or a miss, respectively.
+   */
+  public synchronized V get(final K key)
+  {
+    final Entry<V> entry = entries.get(key);
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    touch(key, entry);
+    return entry.value;
+  }
+
+  public synchronized void put(final K key, final V value)
+  {
+    if (key == null) {
+      throw new NullPointerException("key");
+    }
+    if (value == null) {
+      throw new NullPointerException("value");
+    }
+    final Entry<V> entry = entries.get(key);
+    if (entry != null) {
+      entry.value = value;
+      touch(key, entry);
+      return;
+    }
+    if (entries.size() >= capacity) {
+      evict();
+    }
+    entries.put(key, new Entry<V>(value));
+    addKey(key, 1);
+    minFrequency = 1;
+  }
+
+  public synchronized int size()
+  {
+    return entries.size();
+  }
+
+  public int getCapacity()
+  {
+    return capacity;
+  }
+
+  public synchronized long getHits()
+  {
+    return hits;
+  }
+
+  public synchronized long getMisses()
+  {
+    return misses;
+  }
+
+  public synchronized long getEvictions()
+  {
+    return evictions;
+  }
+
+  public synchronized double getHitRate()
+  {
+    final long lookups = hits + misses;
+    return lookups > 0 ? ((double)hits) / lookups : 0.0;
+  }
+
+  @Override
+  public synchronized String toString()
+  {
+    return "LfuCache[size=" + entries.size() + ", capacity=" + capacity +
+      ", hits=" + hits + ", misses=" + misses +
+      ", evictions=" + evictions + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
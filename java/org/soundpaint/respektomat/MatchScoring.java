@@ -0,0 +1,562 @@
+/*
+ * @(#)MatchScoring.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Term-at-a-time scoring of the sentences of a corpus by the matches
+ * of an expanded query: Each sentence is scored by the sum of the
+ * scores of the matches that it contains, weighted by their term
+ * frequency and by the inverse length of the sentence, plus the
+ * history penalty.  Contributions are always summed up in query
+ * order, such that all variants yield bitwise identical scores.
+ * Scoring uses shared accumulators and hence must not be run
+ * concurrently, except for the shards of a single query.
+ */
+class MatchScoring
+{
+  private static final int DEADLINE_CHECK_INTERVAL = 1024;
+
+  private final CompactIndex compactIndex;
+  private final List<Sentence> sentences;
+  private final int[] tokensCounts;
+  private final MaxScorePruning maxScorePruning;
+  private final ForwardIndex forwardIndex;
+  private final double[] accumulators;
+  private final int[] touched;
+  private final ForkJoinPool scoringPool;
+
+  private MatchScoring()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  /**
+   * @param sentences The corpus, with each sentence at the position of
+   * its index id.
+   * @param tokensCounts The number of tokens of each sentence, indexed
+   * by sentence id.
+   */
+  MatchScoring(final CompactIndex compactIndex,
+               final List<Sentence> sentences, final int[] tokensCounts)
+  {
+    if (compactIndex == null) {
+      throw new NullPointerException("compactIndex");
+    }
+    if (sentences == null) {
+      throw new NullPointerException("sentences");
+    }
+    if (tokensCounts == null) {
+      throw new NullPointerException("tokensCounts");
+    }
+    this.compactIndex = compactIndex;
+    this.sentences = sentences;
+    this.tokensCounts = tokensCounts;
+    maxScorePruning = new MaxScorePruning(compactIndex, tokensCounts);
+    forwardIndex =
+      Config.CASCADE_RANKING || (Config.MIN_HASH_BANDS > 0) ?
+      new ForwardIndex(compactIndex) : null;
+    accumulators = new double[sentences.size()];
+    touched = new int[sentences.size()];
+    scoringPool =
+      Config.PARALLEL_SCORING &&
+      (sentences.size() >= Config.PARALLEL_SCORING_THRESHOLD) ?
+      new ForkJoinPool() : null;
+  }
+
+  /**
+   * Returns true, if the specified deadline, given as value of
+   * System.nanoTime(), has passed.  Scorer.NO_DEADLINE never passes.
+   */
+  static boolean hasPassed(final long deadline)
+  {
+    return
+      (deadline != Scorer.NO_DEADLINE) && (System.nanoTime() - deadline >= 0);
+  }
+
+  /**
+   * Returns the token ids of the matches of the expanded query, in
+   * query order.
+   */
+  private static int[] getTokenIds(final List<TokenMatch> expandedQuery)
+  {
+    final int[] tokenIds = new int[expandedQuery.size()];
+    for (int match = 0; match < tokenIds.length; match++) {
+      tokenIds[match] = expandedQuery.get(match).getToken().getId();
+    }
+    return tokenIds;
+  }
+
+  /**
+   * Walks the compact postings of all matches of the expanded query
+   * and accumulates the scores without history penalty of the
+   * sentences with ids in the range [start, end) in the accumulators,
+   * indexed by sentence id.  Sentences that do not share any matching
+   * token are never visited and keep an accumulator of 0.0.
+   *
+   * @return The number of sentences touched, whose ids are stored in
+   * array touched, starting at index start.
+   */
+  private int accumulateMatchScores(final List<TokenMatch> expandedQuery,
+                                    final int start, final int end)
+  {
+    int touchedCount = 0;
+    for (final TokenMatch match : expandedQuery) {
+      final int tokenId = match.getToken().getId();
+      final int postingsEnd = compactIndex.getPostingsEnd(tokenId);
+      for (int posting =
+             start > 0 ?
+             compactIndex.findPostingsStart(tokenId, start) :
+             compactIndex.getPostingsStart(tokenId);
+           posting < postingsEnd; posting++) {
+        final int sentenceId = compactIndex.getSentenceId(posting);
+        if (sentenceId >= end) {
+          break;
+        }
+        if (accumulators[sentenceId] == 0.0) {
+          touched[start + touchedCount++] = sentenceId;
+        }
+        final double tokenRelevance = 1.0 / tokensCounts[sentenceId];
+        accumulators[sentenceId] +=
+          match.getScore() * tokenRelevance *
+          compactIndex.getTermFrequency(posting);
+      }
+    }
+    return touchedCount;
+  }
+
+  /**
+   * Returns true if the sentence with the specified id contains none
+   * of the specified tokens.  If tokenIds is null, the accumulators
+   * filled by accumulateMatchScores() are checked instead.
+   */
+  private boolean isUntouched(final int sentenceId, final int[] tokenIds)
+  {
+    if (tokenIds == null) {
+      return accumulators[sentenceId] == 0.0;
+    }
+    for (final int tokenId : tokenIds) {
+      if (compactIndex.findPosting(tokenId, sentenceId) >= 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Offers the best sentences with ids in the range [start, end) not
+   * touched by the query to the heap.  Their score is just their
+   * history penalty, which is never positive.  Hence, once the heap
+   * has been offered as many unpenalized untouched sentences as it can
+   * hold, or if it is full of sentences with positive scores, all
+   * subsequent untouched sentences can not make it into the heap
+   * anymore.
+   */
+  private void offerUntouched(final TopKHeap heap,
+                              final int start, final int end,
+                              final int[] tokenIds, final History history)
+  {
+    int unpenalizedCount = 0;
+    for (int sentenceId = start;
+         (sentenceId < end) && (unpenalizedCount < heap.getCapacity()) &&
+           (!heap.isFull() || (heap.getWorstScore() <= 0.0));
+         sentenceId++) {
+      final double score = history.getScore(sentenceId);
+      if (heap.accepts(sentenceId, score) &&
+          isUntouched(sentenceId, tokenIds)) {
+        if (score == 0.0) {
+          unpenalizedCount++;
+        }
+        heap.offer(sentenceId, score);
+      }
+    }
+  }
+
+  /**
+   * Offers the best sentences not touched by any match of the expanded
+   * query to the heap, like offerUntouched(TopKHeap, int, int, int[],
+   * History) for the whole corpus.
+   */
+  void offerUntouched(final TopKHeap heap,
+                      final List<TokenMatch> expandedQuery,
+                      final History history)
+  {
+    offerUntouched(heap, 0, sentences.size(), getTokenIds(expandedQuery),
+                   history);
+  }
+
+  /**
+   * Scores all sentences with ids in the range [start, end) and
+   * returns the k best of them.  Only touches the accumulators and
+   * the part of array touched that belong to that range, such that
+   * disjoint ranges can be scored concurrently.
+   */
+  private TopKHeap scoreShard(final List<TokenMatch> expandedQuery,
+                              final int start, final int end, final int k,
+                              final History history)
+  {
+    if (Config.MAX_SCORE_PRUNING) {
+      final TopKHeap heap =
+        maxScorePruning.scoreShard(expandedQuery, start, end, k, history);
+      offerUntouched(heap, start, end, getTokenIds(expandedQuery), history);
+      return heap;
+    }
+    final TopKHeap heap = new TopKHeap(k);
+    final int touchedCount = accumulateMatchScores(expandedQuery, start, end);
+    for (int i = start; i < start + touchedCount; i++) {
+      final int sentenceId = touched[i];
+      heap.offer(sentenceId, accumulators[sentenceId] +
+                 history.getScore(sentenceId));
+    }
+    offerUntouched(heap, start, end, null, history);
+    for (int i = start; i < start + touchedCount; i++) {
+      accumulators[touched[i]] = 0.0;
+    }
+    return heap;
+  }
+
+  /**
+   * Scores a range of sentences, splitting it into halves that are
+   * scored in parallel, as long as it is larger than the shard size.
+   */
+  private class ScoringTask extends RecursiveTask<TopKHeap>
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final List<TokenMatch> expandedQuery;
+    private final int start;
+    private final int end;
+    private final int k;
+    private final int shardSize;
+    private final History history;
+
+    private ScoringTask(final List<TokenMatch> expandedQuery,
+                        final int start, final int end, final int k,
+                        final int shardSize, final History history)
+    {
+      this.expandedQuery = expandedQuery;
+      this.start = start;
+      this.end = end;
+      this.k = k;
+      this.shardSize = shardSize;
+      this.history = history;
+    }
+
+    @Override
+    protected TopKHeap compute()
+    {
+      if (end - start <= shardSize) {
+        return scoreShard(expandedQuery, start, end, k, history);
+      }
+      final int middle = (start + end) >>> 1;
+      final ScoringTask lower =
+        new ScoringTask(expandedQuery, start, middle, k, shardSize, history);
+      final ScoringTask upper =
+        new ScoringTask(expandedQuery, middle, end, k, shardSize, history);
+      lower.fork();
+      final TopKHeap heap = upper.compute();
+      heap.merge(lower.join());
+      return heap;
+    }
+  }
+
+  /**
+   * Scores all sentences and returns the k best of them, scoring
+   * shards of the corpus in parallel, if Config.PARALLEL_SCORING is
+   * set and the corpus is large enough.
+   */
+  TopKHeap scoreAll(final List<TokenMatch> expandedQuery, final int k,
+                    final History history)
+  {
+    if (scoringPool == null) {
+      return scoreShard(expandedQuery, 0, sentences.size(), k, history);
+    }
+    final int shardSize =
+      Math.max(1, sentences.size() / (4 * scoringPool.getParallelism()));
+    return
+      scoringPool.invoke(new ScoringTask(expandedQuery, 0, sentences.size(),
+                                         k, shardSize, history));
+  }
+
+  /**
+   * Like scoreAll(List, int, History) for each of the specified
+   * histories, but with a single pass over the postings, since the
+   * scores only differ by the history penalty.
+   *
+   * @return The heaps, in order of the histories.
+   */
+  List<TopKHeap> scoreAll(final List<TokenMatch> expandedQuery, final int k,
+                          final List<History> histories)
+  {
+    final List<TopKHeap> heaps = new ArrayList<TopKHeap>();
+    final int touchedCount =
+      accumulateMatchScores(expandedQuery, 0, sentences.size());
+    for (final History history : histories) {
+      final TopKHeap heap = new TopKHeap(k);
+      for (int i = 0; i < touchedCount; i++) {
+        final int sentenceId = touched[i];
+        heap.offer(sentenceId, accumulators[sentenceId] +
+                   history.getScore(sentenceId));
+      }
+      offerUntouched(heap, 0, sentences.size(), null, history);
+      heaps.add(heap);
+    }
+    for (int i = 0; i < touchedCount; i++) {
+      accumulators[touched[i]] = 0.0;
+    }
+    return heaps;
+  }
+
+  /**
+   * Returns the score of the sentence with the specified id without
+   * history penalty, adding up the contributions of the matches of the
+   * expanded query in query order, just like accumulateMatchScores().
+   */
+  private double computeMatchScore(final List<TokenMatch> expandedQuery,
+                                   final int sentenceId)
+  {
+    final double tokenRelevance = 1.0 / tokensCounts[sentenceId];
+    double score = 0.0;
+    for (final TokenMatch match : expandedQuery) {
+      final int posting =
+        compactIndex.findPosting(match.getToken().getId(), sentenceId);
+      if (posting >= 0) {
+        score +=
+          match.getScore() * tokenRelevance *
+          compactIndex.getTermFrequency(posting);
+      }
+    }
+    return score;
+  }
+
+  /**
+   * Anytime variant of scoreAll(): Walks the postings of the matches
+   * of the expanded query in order of descending impact, i.e. of the
+   * upper bound of their contribution to any sentence, such that the
+   * accumulators approach the final scores as fast as possible.  The
+   * clock is checked every DEADLINE_CHECK_INTERVAL postings; when the
+   * deadline has passed, the best sentences by their partial scores
+   * are returned as truncated ranking.  If the deadline has already
+   * passed while expanding the query, the matches expanded so far are
+   * walked completely without checking the clock, since walking their
+   * postings is cheap compared to the fuzzy expansion, and the
+   * ranking would otherwise consist of arbitrary sentences.
+   *
+   * Otherwise, the accumulated scores deviate from those of
+   * accumulateMatchScores() at most by rounding, since they have been
+   * summed up in a different order.  To return exactly the same
+   * ranking, the sentences that come close enough to the k best ones
+   * are scored once more in query order, unless the deadline passes
+   * meanwhile.
+   */
+  Ranking scoreWithin(final List<TokenMatch> expandedQuery, final int k,
+                      final History history, final long deadline,
+                      final boolean expanded)
+  {
+    final int count = expandedQuery.size();
+    final double[] impacts = new double[count];
+    final Integer[] order = new Integer[count];
+    for (int match = 0; match < count; match++) {
+      final TokenMatch tokenMatch = expandedQuery.get(match);
+      impacts[match] =
+        tokenMatch.getScore() *
+        maxScorePruning.getMaxTermWeight(tokenMatch.getToken().getId());
+      order[match] = match;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+        @Override
+        public int compare(final Integer match1, final Integer match2)
+        {
+          return Double.compare(impacts[match2], impacts[match1]);
+        }
+      });
+    boolean exact = expanded;
+    boolean interrupted = false;
+    int touchedCount = 0;
+    int postingsUntilCheck = DEADLINE_CHECK_INTERVAL;
+    for (int rank = 0; !interrupted && (rank < count); rank++) {
+      final TokenMatch match = expandedQuery.get(order[rank]);
+      final int tokenId = match.getToken().getId();
+      final int postingsEnd = compactIndex.getPostingsEnd(tokenId);
+      for (int posting = compactIndex.getPostingsStart(tokenId);
+           posting < postingsEnd; posting++) {
+        if (expanded && (--postingsUntilCheck == 0)) {
+          if (hasPassed(deadline)) {
+            exact = false;
+            interrupted = true;
+            break;
+          }
+          postingsUntilCheck = DEADLINE_CHECK_INTERVAL;
+        }
+        final int sentenceId = compactIndex.getSentenceId(posting);
+        if (accumulators[sentenceId] == 0.0) {
+          touched[touchedCount++] = sentenceId;
+        }
+        final double tokenRelevance = 1.0 / tokensCounts[sentenceId];
+        accumulators[sentenceId] +=
+          match.getScore() * tokenRelevance *
+          compactIndex.getTermFrequency(posting);
+      }
+    }
+    final TopKHeap approximateHeap = new TopKHeap(k);
+    if (exact) {
+      for (int i = 0; i < touchedCount; i++) {
+        final int sentenceId = touched[i];
+        approximateHeap.offer(sentenceId, accumulators[sentenceId] +
+                              history.getScore(sentenceId));
+      }
+    }
+    final TopKHeap heap = new TopKHeap(k);
+    for (int i = 0; i < touchedCount; i++) {
+      final int sentenceId = touched[i];
+      final double approximateScore =
+        accumulators[sentenceId] + history.getScore(sentenceId);
+      if (exact) {
+        if (approximateHeap.isFull() &&
+            !MaxScorePruning.mayBeat(approximateScore,
+                                     approximateHeap.getWorstScore())) {
+          continue;
+        }
+        if (!hasPassed(deadline)) {
+          heap.offer(sentenceId, computeMatchScore(expandedQuery, sentenceId) +
+                     history.getScore(sentenceId));
+          continue;
+        }
+        exact = false;
+      }
+      heap.offer(sentenceId, approximateScore);
+    }
+    offerUntouched(heap, 0, sentences.size(), null, history);
+    for (int i = 0; i < touchedCount; i++) {
+      accumulators[touched[i]] = 0.0;
+    }
+    return new Ranking(drainCandidates(heap), exact);
+  }
+
+  /**
+   * Scores the first count sentences with the specified ids like
+   * computeMatchScore(), but walks the tokens of each sentence in the
+   * forward index rather than searching the postings of each match,
+   * adding up the contributions of the matches found in query order,
+   * such that the scores are the very same.  Offers the sentences with
+   * history penalty to the heap.  Requires the forward index, which
+   * is only built for the cascade and the MinHash index.
+   *
+   * @return The index of the best of the sentences, or -1, if count
+   * is 0.
+   */
+  int scoreCandidates(final List<TokenMatch> expandedQuery,
+                      final int[] sentenceIds, final int count,
+                      final TopKHeap heap, final History history)
+  {
+    if (forwardIndex == null) {
+      throw new IllegalStateException("forward index disabled");
+    }
+    // token id in the upper, match index in the lower half
+    final long[] matchesByTokenId = new long[expandedQuery.size()];
+    for (int match = 0; match < matchesByTokenId.length; match++) {
+      matchesByTokenId[match] =
+        ((long)expandedQuery.get(match).getToken().getId() << 32) | match;
+    }
+    Arrays.sort(matchesByTokenId);
+    final double[] contributions = new double[expandedQuery.size()];
+    final int[] contributingMatches = new int[expandedQuery.size()];
+    int winnerRank = -1;
+    double winnerScore = 0.0;
+    for (int rank = 0; rank < count; rank++) {
+      final int sentenceId = sentenceIds[rank];
+      final double tokenRelevance = 1.0 / tokensCounts[sentenceId];
+      int contributingCount = 0;
+      final int entriesEnd = forwardIndex.getEntriesEnd(sentenceId);
+      for (int entry = forwardIndex.getEntriesStart(sentenceId);
+           entry < entriesEnd; entry++) {
+        final long tokenId = forwardIndex.getTokenId(entry);
+        final int first =
+          Arrays.binarySearch(matchesByTokenId, tokenId << 32);
+        for (int i = first >= 0 ? first : -first - 1;
+             (i < matchesByTokenId.length) &&
+               ((matchesByTokenId[i] >>> 32) == tokenId); i++) {
+          final int match = (int)matchesByTokenId[i];
+          contributions[match] =
+            expandedQuery.get(match).getScore() * tokenRelevance *
+            forwardIndex.getTermFrequency(entry);
+          contributingMatches[contributingCount++] = match;
+        }
+      }
+      Arrays.sort(contributingMatches, 0, contributingCount);
+      double matchScore = 0.0;
+      for (int i = 0; i < contributingCount; i++) {
+        matchScore += contributions[contributingMatches[i]];
+      }
+      final double score = matchScore + history.getScore(sentenceId);
+      heap.offer(sentenceId, score);
+      if ((winnerRank < 0) ||
+          TopKHeap.isBetter(score, sentenceId,
+                            winnerScore, sentenceIds[winnerRank])) {
+        winnerRank = rank;
+        winnerScore = score;
+      }
+    }
+    return winnerRank;
+  }
+
+  /**
+   * Empties the heap into a list of candidates, best first.
+   */
+  List<Candidate> drainCandidates(final TopKHeap heap)
+  {
+    final List<Candidate> candidates = new ArrayList<Candidate>();
+    final int[] ids = new int[heap.size()];
+    final double[] scores = new double[heap.size()];
+    final int count = heap.drain(ids, scores);
+    for (int i = 0; i < count; i++) {
+      candidates.add(new Candidate(sentences.get(ids[i]), scores[i]));
+    }
+    return candidates;
+  }
+
+  /**
+   * Returns the counters of the pruning in a single line.
+   */
+  String createStatistics()
+  {
+    return maxScorePruning.createStatistics();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "MatchScoring[#sentences=" + sentences.size() +
+      ", parallel=" + (scoringPool != null) + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
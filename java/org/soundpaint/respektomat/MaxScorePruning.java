@@ -0,0 +1,349 @@
+/*
+ * @(#)MaxScorePruning.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Upper bounds of the contributions of the tokens of a compact index
+ * to the scores of sentences, both overall and per block of
+ * MAX_SCORE_BLOCK_SIZE consecutive sentence ids, and MaxScore dynamic
+ * pruning based on them, selected by Config.MAX_SCORE_PRUNING.
+ */
+class MaxScorePruning
+{
+  private static final double MAX_SCORE_SLACK = 1e-9;
+  private static final int MAX_SCORE_BLOCK_SIZE = 1024;
+
+  private final CompactIndex compactIndex;
+  private final int[] tokensCounts;
+  private final double[] maxTermWeights;
+  private final int[] blockMaxOffsets;
+  private final int[] blockMaxBlocks;
+  private final double[] blockMaxWeights;
+  private final LongAdder evaluatedSentences;
+  private final LongAdder prunedSentences;
+
+  private MaxScorePruning()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  /**
+   * @param tokensCounts The number of tokens of each sentence, indexed
+   * by sentence id.
+   */
+  MaxScorePruning(final CompactIndex compactIndex, final int[] tokensCounts)
+  {
+    if (compactIndex == null) {
+      throw new NullPointerException("compactIndex");
+    }
+    if (tokensCounts == null) {
+      throw new NullPointerException("tokensCounts");
+    }
+    this.compactIndex = compactIndex;
+    this.tokensCounts = tokensCounts;
+    maxTermWeights = new double[compactIndex.getTokenIdsCount()];
+    blockMaxOffsets = new int[maxTermWeights.length + 1];
+    blockMaxBlocks = new int[countBlockMaxima()];
+    blockMaxWeights = new double[blockMaxBlocks.length];
+    computeTermBounds();
+    evaluatedSentences = new LongAdder();
+    prunedSentences = new LongAdder();
+  }
+
+  /**
+   * Returns the number of pairs of token and block of
+   * MAX_SCORE_BLOCK_SIZE consecutive sentence ids, such that the token
+   * occurs in a sentence of the block, and fills blockMaxOffsets
+   * accordingly.
+   */
+  private int countBlockMaxima()
+  {
+    int count = 0;
+    for (int tokenId = 0; tokenId < maxTermWeights.length; tokenId++) {
+      blockMaxOffsets[tokenId] = count;
+      int lastBlock = -1;
+      final int postingsEnd = compactIndex.getPostingsEnd(tokenId);
+      for (int posting = compactIndex.getPostingsStart(tokenId);
+           posting < postingsEnd; posting++) {
+        final int block =
+          compactIndex.getSentenceId(posting) / MAX_SCORE_BLOCK_SIZE;
+        if (block != lastBlock) {
+          count++;
+          lastBlock = block;
+        }
+      }
+    }
+    blockMaxOffsets[maxTermWeights.length] = count;
+    return count;
+  }
+
+  /**
+   * Computes for each token id the maximum of tf / tokensCount over
+   * all sentences containing the token, i.e. the maximum weight that a
+   * match of the token may contribute to a sentence per unit of match
+   * score, as well as that maximum for each block of
+   * MAX_SCORE_BLOCK_SIZE consecutive sentence ids.
+   */
+  private void computeTermBounds()
+  {
+    for (int tokenId = 0; tokenId < maxTermWeights.length; tokenId++) {
+      int blockMax = blockMaxOffsets[tokenId] - 1;
+      int lastBlock = -1;
+      final int postingsEnd = compactIndex.getPostingsEnd(tokenId);
+      for (int posting = compactIndex.getPostingsStart(tokenId);
+           posting < postingsEnd; posting++) {
+        final int sentenceId = compactIndex.getSentenceId(posting);
+        final int block = sentenceId / MAX_SCORE_BLOCK_SIZE;
+        if (block != lastBlock) {
+          blockMax++;
+          blockMaxBlocks[blockMax] = block;
+          lastBlock = block;
+        }
+        final double termWeight =
+          compactIndex.getTermFrequency(posting) * 1.0 /
+          tokensCounts[sentenceId];
+        if (termWeight > blockMaxWeights[blockMax]) {
+          blockMaxWeights[blockMax] = termWeight;
+        }
+        if (termWeight > maxTermWeights[tokenId]) {
+          maxTermWeights[tokenId] = termWeight;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the maximum weight that a match of the token with the
+   * specified id may contribute to any sentence per unit of match
+   * score.
+   */
+  double getMaxTermWeight(final int tokenId)
+  {
+    return maxTermWeights[tokenId];
+  }
+
+  /**
+   * Returns true if a sentence whose score is at most the specified
+   * bound might still beat the worst sentence kept by a full heap,
+   * whose score is threshold.  Since sentences are visited in order
+   * of ascending id, a sentence with a score equal to the threshold
+   * would lose the tie.  The bound is relaxed a little to account for
+   * rounding, as it is summed up in a different order than the score.
+   */
+  static boolean mayBeat(final double bound, final double threshold)
+  {
+    return bound + MAX_SCORE_SLACK * (Math.abs(bound) + 1.0) > threshold;
+  }
+
+  /**
+   * Variant of MatchScoring.scoreShard() with MaxScore dynamic
+   * pruning.  Each match of the expanded query gets an upper bound of
+   * its contribution to any sentence, i.e. its match score times the
+   * maximum term weight of its token, and matches are ordered by
+   * ascending bound.
+   *
+   * Sentences are processed in windows, each covering a block of
+   * MAX_SCORE_BLOCK_SIZE sentence ids, in ascending order.  For each
+   * window, the bounds are tightened to the maximum term weights
+   * within the block; matches whose tokens do not occur in the block
+   * at all drop out.  Once the heap is full, the longest prefix of
+   * matches whose window bounds sum up to no more than the score of
+   * the worst sentence kept is non-essential: a sentence containing
+   * only those can not make it into the heap.  Only the postings of
+   * the essential matches are walked, accumulating partial scores
+   * term-at-a-time.  Together with the bounds of the non-essential
+   * matches and the exact history penalty, the partial score bounds
+   * the score of each sentence touched.  The non-essential matches are
+   * then probed in order of descending bound, replacing each bound by
+   * the actual contribution, until the sentence can be rejected.  Only
+   * the few remaining sentences are scored exactly, summing up
+   * contributions in query order, which yields the very same scores
+   * as MatchScoring.accumulateMatchScores().
+   *
+   * The sentences not touched by the query are left to the caller.
+   */
+  TopKHeap scoreShard(final List<TokenMatch> expandedQuery,
+                      final int start, final int end, final int k,
+                      final History history)
+  {
+    final TopKHeap heap = new TopKHeap(k);
+    final int count = expandedQuery.size();
+    final int[] tokenIds = new int[count];
+    final double[] matchScores = new double[count];
+    final double[] bounds = new double[count];
+    final int[] cursors = new int[count];
+    final int[] postingsEnds = new int[count];
+    final int[] blockCursors = new int[count];
+    final Integer[] order = new Integer[count];
+    for (int match = 0; match < count; match++) {
+      final TokenMatch tokenMatch = expandedQuery.get(match);
+      tokenIds[match] = tokenMatch.getToken().getId();
+      matchScores[match] = tokenMatch.getScore();
+      bounds[match] = matchScores[match] * maxTermWeights[tokenIds[match]];
+      cursors[match] = compactIndex.findPostingsStart(tokenIds[match], start);
+      postingsEnds[match] =
+        compactIndex.findPostingsStart(tokenIds[match], end);
+      blockCursors[match] = blockMaxOffsets[tokenIds[match]];
+      order[match] = match;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+        @Override
+        public int compare(final Integer match1, final Integer match2)
+        {
+          return Double.compare(bounds[match1], bounds[match2]);
+        }
+      });
+    final double[] windowBounds = new double[count];
+    final double[] prefixBounds = new double[count + 1];
+    final double[] partialScores = new double[MAX_SCORE_BLOCK_SIZE];
+    final int[] windowTouched = new int[MAX_SCORE_BLOCK_SIZE];
+    long evaluatedCount = 0;
+    long prunedCount = 0;
+    int windowEnd;
+    for (int windowStart = start; windowStart < end; windowStart = windowEnd) {
+      final int block = windowStart / MAX_SCORE_BLOCK_SIZE;
+      windowEnd = Math.min((block + 1) * MAX_SCORE_BLOCK_SIZE, end);
+      for (int rank = 0; rank < count; rank++) {
+        final int match = order[rank];
+        final int blockMaxEnd = blockMaxOffsets[tokenIds[match] + 1];
+        while ((blockCursors[match] < blockMaxEnd) &&
+               (blockMaxBlocks[blockCursors[match]] < block)) {
+          blockCursors[match]++;
+        }
+        windowBounds[match] =
+          (blockCursors[match] < blockMaxEnd) &&
+          (blockMaxBlocks[blockCursors[match]] == block) ?
+          matchScores[match] * blockMaxWeights[blockCursors[match]] : 0.0;
+        prefixBounds[rank + 1] = prefixBounds[rank] + windowBounds[match];
+      }
+      int firstEssential = 0;
+      if (heap.isFull()) {
+        final double threshold = heap.getWorstScore();
+        while ((firstEssential < count) &&
+               !mayBeat(prefixBounds[firstEssential + 1], threshold)) {
+          firstEssential++;
+        }
+      }
+      int touchedCount = 0;
+      for (int rank = firstEssential; rank < count; rank++) {
+        final int match = order[rank];
+        if (windowBounds[match] == 0.0) {
+          continue;
+        }
+        cursors[match] =
+          compactIndex.advancePosting(cursors[match], postingsEnds[match],
+                                      windowStart);
+        for (; cursors[match] < postingsEnds[match]; cursors[match]++) {
+          final int sentenceId = compactIndex.getSentenceId(cursors[match]);
+          if (sentenceId >= windowEnd) {
+            break;
+          }
+          final int slot = sentenceId - windowStart;
+          if (partialScores[slot] == 0.0) {
+            windowTouched[touchedCount++] = slot;
+          }
+          partialScores[slot] +=
+            matchScores[match] * compactIndex.getTermFrequency(cursors[match]);
+        }
+      }
+      Arrays.sort(windowTouched, 0, touchedCount);
+      for (int i = 0; i < touchedCount; i++) {
+        final int slot = windowTouched[i];
+        final int sentenceId = windowStart + slot;
+        final double tokenRelevance = 1.0 / tokensCounts[sentenceId];
+        double knownScore =
+          partialScores[slot] * tokenRelevance + history.getScore(sentenceId);
+        partialScores[slot] = 0.0;
+        boolean mayEnter = true;
+        for (int rank = firstEssential; rank > 0; rank--) {
+          if (heap.isFull() &&
+              !mayBeat(knownScore + prefixBounds[rank],
+                       heap.getWorstScore())) {
+            mayEnter = false;
+            break;
+          }
+          final int match = order[rank - 1];
+          if (windowBounds[match] == 0.0) {
+            continue;
+          }
+          cursors[match] =
+            compactIndex.advancePosting(cursors[match], postingsEnds[match],
+                                        sentenceId);
+          if ((cursors[match] < postingsEnds[match]) &&
+              (compactIndex.getSentenceId(cursors[match]) == sentenceId)) {
+            knownScore +=
+              matchScores[match] * tokenRelevance *
+              compactIndex.getTermFrequency(cursors[match]);
+          }
+        }
+        if (mayEnter && heap.isFull() &&
+            !mayBeat(knownScore, heap.getWorstScore())) {
+          mayEnter = false;
+        }
+        if (!mayEnter) {
+          prunedCount++;
+          continue;
+        }
+        double score = 0.0;
+        for (int match = 0; match < count; match++) {
+          final int posting =
+            compactIndex.findPosting(tokenIds[match], sentenceId);
+          if (posting >= 0) {
+            score +=
+              matchScores[match] * tokenRelevance *
+              compactIndex.getTermFrequency(posting);
+          }
+        }
+        heap.offer(sentenceId, score + history.getScore(sentenceId));
+        evaluatedCount++;
+      }
+    }
+    evaluatedSentences.add(evaluatedCount);
+    prunedSentences.add(prunedCount);
+    return heap;
+  }
+
+  /**
+   * Returns the pruning counters in a single line.
+   */
+  String createStatistics()
+  {
+    return "MaxScore: evaluated " + evaluatedSentences +
+      " sentences, pruned " + prunedSentences;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "MaxScorePruning[#blockMaxima=" + blockMaxBlocks.length + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
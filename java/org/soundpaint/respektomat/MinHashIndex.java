@@ -0,0 +1,259 @@
+/*
+ * @(#)MinHashIndex.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.soundpaint.respektomat;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Locality sensitive hashing of sentences for finding candidate
+ * sentences similar to a query without scanning the whole corpus.
+ *
+ * Each sentence is represented by the set of character shingles of
+ * its words, i.e. all SHINGLE_LENGTH consecutive characters of each
+ * lower case word, framed by a start and an end marker, such that
+ * words that differ in a few characters, like fuzzy matches do, still
+ * share most of their shingles.  A MinHash signature of bands * rows
+ * values estimates the Jaccard similarity of two shingle sets; its
+ * values are grouped into bands of rows values each, and each band is
+ * hashed into a bucket.  Two sentences collide, if they share the
+ * bucket of at least one band, which happens with probability 1 - (1
+ * - j^rows)^bands for Jaccard similarity j.  Fewer rows and more
+ * bands thus raise the recall at the cost of more candidates.
+ *
+ * The buckets of each band are stored as the band hashes of all
+ * sentences in ascending order, together with the corresponding
+ * sentence ids, and looked up by binary search.
+ */
+public class MinHashIndex
+{
+  private static final int SHINGLE_LENGTH = 3;
+  private static final char WORD_START = '^';
+  private static final char WORD_END = '$';
+
+  private final int bands;
+  private final int rows;
+  private final long[] seeds;
+  private final long[][] bandHashes;
+  private final int[][] bandSentenceIds;
+
+  private MinHashIndex()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  public MinHashIndex(final List<Sentence> sentences,
+                      final int bands, final int rows)
+  {
+    if (sentences == null) {
+      throw new NullPointerException("sentences");
+    }
+    if (bands <= 0) {
+      throw new IllegalArgumentException("bands <= 0: " + bands);
+    }
+    if (rows <= 0) {
+      throw new IllegalArgumentException("rows <= 0: " + rows);
+    }
+    this.bands = bands;
+    this.rows = rows;
+    seeds = new long[bands * rows];
+    for (int i = 0; i < seeds.length; i++) {
+      seeds[i] = mix(i + 1);
+    }
+    final List<long[]> signatures = new ArrayList<long[]>();
+    final List<Integer> sentenceIds = new ArrayList<Integer>();
+    for (final Sentence sentence : sentences) {
+      final long[] signature = createBandHashes(sentence);
+      if (signature != null) {
+        signatures.add(signature);
+        sentenceIds.add(sentence.getIndexId());
+      }
+    }
+    bandHashes = new long[bands][signatures.size()];
+    bandSentenceIds = new int[bands][signatures.size()];
+    final Integer[] order = new Integer[signatures.size()];
+    for (int band = 0; band < bands; band++) {
+      final int currentBand = band;
+      for (int i = 0; i < order.length; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, new Comparator<Integer>() {
+          @Override
+          public int compare(final Integer sentence1, final Integer sentence2)
+          {
+            return Long.compare(signatures.get(sentence1)[currentBand],
+                                signatures.get(sentence2)[currentBand]);
+          }
+        });
+      for (int i = 0; i < order.length; i++) {
+        bandHashes[band][i] = signatures.get(order[i])[band];
+        bandSentenceIds[band][i] = sentenceIds.get(order[i]);
+      }
+    }
+  }
+
+  /**
+   * SplitMix64 finalizer, used as hash function of the shingles and
+   * for combining the rows of a band.
+   */
+  static long mix(long z)
+  {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  private static Set<Long> createShingles(final Sentence sentence)
+  {
+    final Set<Long> shingles = new HashSet<Long>();
+    for (final Token token : sentence.getTokens()) {
+      if (token.getType() != Token.Type.WORD) {
+        continue;
+      }
+      final String word =
+        WORD_START + token.getValue().toLowerCase() + WORD_END;
+      for (int start = 0; start + SHINGLE_LENGTH <= word.length(); start++) {
+        long shingle = 0;
+        for (int i = start; i < start + SHINGLE_LENGTH; i++) {
+          shingle = (shingle << 16) | word.charAt(i);
+        }
+        shingles.add(shingle);
+      }
+    }
+    return shingles;
+  }
+
+  /**
+   * Returns the hash of each band of the MinHash signature of the
+   * specified sentence, or null, if the sentence contains no words.
+   */
+  private long[] createBandHashes(final Sentence sentence)
+  {
+    final Set<Long> shingles = createShingles(sentence);
+    if (shingles.isEmpty()) {
+      return null;
+    }
+    final long[] minima = new long[seeds.length];
+    Arrays.fill(minima, Long.MAX_VALUE);
+    for (final long shingle : shingles) {
+      for (int i = 0; i < seeds.length; i++) {
+        minima[i] = Math.min(minima[i], mix(shingle ^ seeds[i]));
+      }
+    }
+    final long[] hashes = new long[bands];
+    for (int band = 0; band < bands; band++) {
+      long hash = band;
+      for (int row = 0; row < rows; row++) {
+        hash = mix(hash ^ minima[band * rows + row]);
+      }
+      hashes[band] = hash;
+    }
+    return hashes;
+  }
+
+  private static int lowerBound(final long[] hashes, final long hash)
+  {
+    int low = 0;
+    int high = hashes.length;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (hashes[middle] < hash) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns the ids of all sentences that share the bucket of at least
+   * one band with the specified sentence, in ascending order.  May be
+   * called concurrently from multiple threads.
+   */
+  public int[] getCandidates(final Sentence sentence)
+  {
+    final long[] hashes = createBandHashes(sentence);
+    if (hashes == null) {
+      return new int[0];
+    }
+    int[] candidates = new int[16];
+    int count = 0;
+    for (int band = 0; band < bands; band++) {
+      final long[] bandHashes = this.bandHashes[band];
+      for (int i = lowerBound(bandHashes, hashes[band]);
+           (i < bandHashes.length) && (bandHashes[i] == hashes[band]); i++) {
+        if (count == candidates.length) {
+          candidates = Arrays.copyOf(candidates, 2 * count);
+        }
+        candidates[count++] = bandSentenceIds[band][i];
+      }
+    }
+    Arrays.sort(candidates, 0, count);
+    int distinctCount = 0;
+    for (int i = 0; i < count; i++) {
+      if ((distinctCount == 0) ||
+          (candidates[i] != candidates[distinctCount - 1])) {
+        candidates[distinctCount++] = candidates[i];
+      }
+    }
+    return Arrays.copyOf(candidates, distinctCount);
+  }
+
+  @Override
+  public String toString()
+  {
+    return "MinHashIndex[bands=" + bands + ", rows=" + rows +
+      ", #sentences=" + bandHashes[0].length + "]";
+  }
+
+  /**
+   * Measures the recall of the candidates found by LSH against
+   * exhaustive scoring, with the numbers of bands and rows as
+   * configured.  The queries are read from the specified file, one
+   * per line; by default, the first half of the words of each corpus
+   * sentence serves as query.
+   *
+   * Usage: MinHashIndex [corpus file [queries file [k]]]
+   */
+  public static void main(final String argv[])
+    throws IOException, ParseException
+  {
+    final String corpusPath =
+      argv.length > 0 ? argv[0] : Config.DATABASE_XML_FILE;
+    final int k = argv.length > 2 ? Integer.parseInt(argv[2]) : 1;
+    final List<Sentence> corpus = Respektomat.readCorpus(corpusPath);
+    final List<Sentence> queries =
+      ScorerComparison.loadQueries(corpus, argv.length > 1 ? argv[1] : null);
+    new ReferenceScorer(corpus).measureMinHashRecall(queries, k);
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
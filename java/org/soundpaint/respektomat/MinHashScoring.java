@@ -0,0 +1,189 @@
+/*
+ * @(#)MinHashScoring.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Alternative to MatchScoring.scoreAll(), selected by
+ * Config.MIN_HASH_BANDS, that only scores the sentences that collide
+ * with the incomplete sentence in a MinHash index, see
+ * MatchScoring.scoreCandidates(), and fills up with sentences not
+ * touched by the query.  If no sentence collides, e.g. since the
+ * incomplete sentence contains no words, the whole corpus is scored
+ * by scoreAll().  The deadline-aware and the incremental scoring do
+ * not use the MinHash index.
+ */
+class MinHashScoring
+{
+  /**
+   * Empty history for scoring without history penalty.
+   */
+  private static final History NO_HISTORY = new History();
+
+  private final MinHashIndex minHashIndex;
+  private final VocabularyMatcher matcher;
+  private final MatchScoring matchScoring;
+  private final int sentencesCount;
+  private final LongAdder minHashQueries;
+  private final LongAdder minHashFallbacks;
+  private final LongAdder minHashCandidates;
+
+  private MinHashScoring()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  /**
+   * @param sentences The corpus, with each sentence at the position of
+   * its index id.
+   */
+  MinHashScoring(final List<Sentence> sentences,
+                 final VocabularyMatcher matcher,
+                 final MatchScoring matchScoring)
+  {
+    if (sentences == null) {
+      throw new NullPointerException("sentences");
+    }
+    if (matcher == null) {
+      throw new NullPointerException("matcher");
+    }
+    if (matchScoring == null) {
+      throw new NullPointerException("matchScoring");
+    }
+    minHashIndex =
+      new MinHashIndex(sentences, Config.MIN_HASH_BANDS, Config.MIN_HASH_ROWS);
+    this.matcher = matcher;
+    this.matchScoring = matchScoring;
+    sentencesCount = sentences.size();
+    minHashQueries = new LongAdder();
+    minHashFallbacks = new LongAdder();
+    minHashCandidates = new LongAdder();
+  }
+
+  /**
+   * Returns the k best sentences as continuation of the incomplete
+   * sentence, as found via the MinHash index.
+   */
+  TopKHeap score(final Sentence incompleteSentence, final int k,
+                 final History history)
+  {
+    final int[] candidateIds = minHashIndex.getCandidates(incompleteSentence);
+    final List<TokenMatch> expandedQuery =
+      matcher.expandQuery(incompleteSentence);
+    minHashQueries.increment();
+    minHashCandidates.add(candidateIds.length);
+    if (candidateIds.length == 0) {
+      minHashFallbacks.increment();
+      return matchScoring.scoreAll(expandedQuery, k, history);
+    }
+    final TopKHeap heap = new TopKHeap(k);
+    matchScoring.scoreCandidates(expandedQuery, candidateIds,
+                                 candidateIds.length, heap, history);
+    matchScoring.offerUntouched(heap, expandedQuery, history);
+    return heap;
+  }
+
+  /**
+   * Measures how well the MinHash index approximates exhaustive
+   * scoring of the specified incomplete sentences, both without
+   * history penalty: Prints and returns the recall, i.e. the fraction
+   * of the k best sentences found by exhaustive scoring that are also
+   * among the k best ones found via the MinHash index, together with
+   * the average fraction of the corpus scored and the times taken,
+   * not counting the expansion of the queries, whose matches are
+   * cached.
+   */
+  double measureRecall(final List<Sentence> incompleteSentences, final int k)
+  {
+    if ((sentencesCount == 0) || incompleteSentences.isEmpty()) {
+      return 1.0;
+    }
+    final int capacity = Math.min(k, sentencesCount);
+    final long candidatesBefore = minHashCandidates.sum();
+    long exhaustiveTime = 0;
+    long minHashTime = 0;
+    long found = 0;
+    long relevant = 0;
+    for (final Sentence incompleteSentence : incompleteSentences) {
+      final List<TokenMatch> expandedQuery =
+        matcher.expandQuery(incompleteSentence);
+      final long startTime = System.nanoTime();
+      final List<Candidate> exhaustive =
+        matchScoring.drainCandidates(matchScoring.scoreAll(expandedQuery,
+                                                           capacity,
+                                                           NO_HISTORY));
+      final long middleTime = System.nanoTime();
+      final List<Candidate> approximate =
+        matchScoring.drainCandidates(score(incompleteSentence, capacity,
+                                           NO_HISTORY));
+      final long stopTime = System.nanoTime();
+      exhaustiveTime += middleTime - startTime;
+      minHashTime += stopTime - middleTime;
+      final Set<Integer> approximateIds = new HashSet<Integer>();
+      for (final Candidate candidate : approximate) {
+        approximateIds.add(candidate.getSentence().getIndexId());
+      }
+      for (final Candidate candidate : exhaustive) {
+        if (approximateIds.contains(candidate.getSentence().getIndexId())) {
+          found++;
+        }
+      }
+      relevant += exhaustive.size();
+    }
+    final double recall = (double)found / relevant;
+    final double scoredFraction =
+      (double)(minHashCandidates.sum() - candidatesBefore) /
+      incompleteSentences.size() / sentencesCount;
+    System.out.println(minHashIndex + ": recall@" + capacity + " = " +
+                       recall + " over " + incompleteSentences.size() +
+                       " queries, scoring " + scoredFraction +
+                       " of all sentences on average, in " +
+                       minHashTime / 1000000 + "ms vs " +
+                       exhaustiveTime / 1000000 + "ms exhaustively");
+    return recall;
+  }
+
+  /**
+   * Returns the counters of the MinHash scoring in a single line.
+   */
+  String createStatistics()
+  {
+    return "MinHash: " + minHashQueries + " queries, " +
+      minHashFallbacks + " without collision, " +
+      minHashCandidates + " candidates scored";
+  }
+
+  @Override
+  public String toString()
+  {
+    return "MinHashScoring[minHashIndex=" + minHashIndex + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -0,0 +1,230 @@
+/*
+ * @(#)NGramIndex.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Character gram index over the word vocabulary for finding fuzzy
+ * match candidates without scanning the whole vocabulary.
+ *
+ * StringDistance compares the sorted, lower case characters of two
+ * words, i.e. their character multisets, such that the character
+ * order of the original words does not matter.  Therefore, the grams
+ * of this index are single lower case characters, numbered by their
+ * occurrence within the word (e.g. "Anna" yields a#1, a#2, n#1, n#2).
+ * The number of grams shared by two words then equals the number of
+ * common characters computed by StringDistance, and since a
+ * similarity of at least 0.5 requires at least (x.length() +
+ * y.length()) / 4 common characters, filtering by that count never
+ * drops a candidate that would pass the cutoff.  Character n-grams
+ * with n > 1 would depend on character order and thus not give a safe
+ * bound for this metric.
+ *
+ * Words are numbered in buckets of ascending length, such that each
+ * posting list is ordered by word length, too.  For a query word,
+ * only the part of each posting list that covers the length buckets
+ * accepted by StringDistance.mayReachCutoff() is visited.
+ */
+public class NGramIndex implements VocabularyFilter
+{
+  private static final Comparator<Token> BY_LENGTH =
+    new Comparator<Token>() {
+      @Override
+      public int compare(final Token token1, final Token token2)
+      {
+        return Integer.compare(token1.getValue().length(),
+                               token2.getValue().length());
+      }
+    };
+
+  private static final Comparator<Token> BY_ID =
+    new Comparator<Token>() {
+      @Override
+      public int compare(final Token token1, final Token token2)
+      {
+        return Integer.compare(token1.getId(), token2.getId());
+      }
+    };
+
+  private final Token[] tokens;
+  private final int[] lengthBucketOffsets;
+  private final Map<Integer, int[]> postings;
+  private final ThreadLocal<int[][]> scratch;
+
+  private NGramIndex()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  public NGramIndex(final Iterable<Token> vocabulary)
+  {
+    if (vocabulary == null) {
+      throw new NullPointerException("vocabulary");
+    }
+    final List<Token> words = new ArrayList<Token>();
+    for (final Token token : vocabulary) {
+      if (token.getType() == Token.Type.WORD) {
+        words.add(token);
+      }
+    }
+    Collections.sort(words, BY_LENGTH);
+    tokens = words.toArray(new Token[words.size()]);
+    final int maxLength =
+      tokens.length > 0 ? tokens[tokens.length - 1].getValue().length() : 0;
+    lengthBucketOffsets = new int[maxLength + 2];
+    final Map<Integer, List<Integer>> postingLists =
+      new HashMap<Integer, List<Integer>>();
+    for (int ordinal = 0; ordinal < tokens.length; ordinal++) {
+      lengthBucketOffsets[tokens[ordinal].getValue().length() + 1]++;
+      for (final int gram : createGrams(tokens[ordinal])) {
+        List<Integer> postingList = postingLists.get(gram);
+        if (postingList == null) {
+          postingList = new ArrayList<Integer>();
+          postingLists.put(gram, postingList);
+        }
+        postingList.add(ordinal);
+      }
+    }
+    for (int length = 1; length < lengthBucketOffsets.length; length++) {
+      lengthBucketOffsets[length] += lengthBucketOffsets[length - 1];
+    }
+    postings = new HashMap<Integer, int[]>();
+    for (final Map.Entry<Integer, List<Integer>> entry :
+           postingLists.entrySet()) {
+      final List<Integer> postingList = entry.getValue();
+      final int[] ordinals = new int[postingList.size()];
+      for (int i = 0; i < ordinals.length; i++) {
+        ordinals[i] = postingList.get(i);
+      }
+      postings.put(entry.getKey(), ordinals);
+    }
+    scratch = new ThreadLocal<int[][]>() {
+        @Override
+        protected int[][] initialValue()
+        {
+          return new int[][] { new int[tokens.length], new int[tokens.length] };
+        }
+      };
+  }
+
+  private static int[] createGrams(final Token word)
+  {
+    final char[] chars = word.getSignature();
+    final int[] grams = new int[chars.length];
+    int occurrence = 0;
+    for (int i = 0; i < chars.length; i++) {
+      occurrence = (i > 0) && (chars[i] == chars[i - 1]) ? occurrence + 1 : 0;
+      grams[i] = (occurrence << 16) | chars[i];
+    }
+    return grams;
+  }
+
+  public int size()
+  {
+    return tokens.length;
+  }
+
+  /**
+   * Returns the first ordinal of the bucket of words with the
+   * specified length, or of the next longer words, if there are no
+   * words of that length.
+   */
+  private int getLengthBucketStart(final int length)
+  {
+    if (length < 0) {
+      return 0;
+    }
+    if (length >= lengthBucketOffsets.length) {
+      return tokens.length;
+    }
+    return lengthBucketOffsets[length];
+  }
+
+  private static int lowerBound(final int[] ordinals, final int ordinal)
+  {
+    final int index = Arrays.binarySearch(ordinals, ordinal);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  /**
+   * Returns all vocabulary words that share enough characters with
+   * the specified token to possibly reach a similarity of 0.5, in
+   * order of ascending token id.  Returns an empty list for non-word
+   * tokens.  May be called concurrently from multiple threads.
+   */
+  @Override
+  public List<Token> getCandidates(final Token token)
+  {
+    final List<Token> candidates = new ArrayList<Token>();
+    if (token.getType() != Token.Type.WORD) {
+      return candidates;
+    }
+    final int[][] scratch = this.scratch.get();
+    final int[] counts = scratch[0];
+    final int[] touched = scratch[1];
+    final int length = token.getValue().length();
+    final int startOrdinal = getLengthBucketStart((length + 2) / 3);
+    final int stopOrdinal = getLengthBucketStart(3 * length + 1);
+    int touchedCount = 0;
+    for (final int gram : createGrams(token)) {
+      final int[] ordinals = postings.get(gram);
+      if (ordinals != null) {
+        final int stop = lowerBound(ordinals, stopOrdinal);
+        for (int i = lowerBound(ordinals, startOrdinal); i < stop; i++) {
+          final int ordinal = ordinals[i];
+          if (counts[ordinal]++ == 0) {
+            touched[touchedCount++] = ordinal;
+          }
+        }
+      }
+    }
+    for (int i = 0; i < touchedCount; i++) {
+      final int ordinal = touched[i];
+      final Token candidate = tokens[ordinal];
+      if (4 * counts[ordinal] >= length + candidate.getValue().length()) {
+        candidates.add(candidate);
+      }
+      counts[ordinal] = 0;
+    }
+    Collections.sort(candidates, BY_ID);
+    return candidates;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "NGramIndex[#tokens=" + tokens.length +
+      ", #grams=" + postings.size() + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
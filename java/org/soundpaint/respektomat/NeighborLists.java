@@ -0,0 +1,394 @@
+/*
+ * @(#)NeighborLists.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Precomputed fuzzy neighbors of each word of the vocabulary, i.e.
+ * all vocabulary words with a similarity of at least 0.5, including
+ * the word itself.  Computing the lists is expensive and therefore
+ * done once at build time by running this class' main() method; the
+ * result is stored in a text file alongside the corpus.  Since
+ * StringDistance.computeSimilarity() is symmetric, the similarity
+ * stored for a pair equals the one that would be computed at query
+ * time for an exact vocabulary hit.
+ */
+public class NeighborLists
+{
+  private static final String HEADER = "# respektomat neighbor lists";
+  private static final String VOCABULARY = "vocabulary";
+  private static final int BLOCK_SIZE = 256;
+
+  private final int[] offsets;
+  private final int[] neighborIds;
+  private final double[] similarities;
+
+  private NeighborLists()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  /**
+   * @param neighborIdsByTokenId For each token id, the ids of its
+   * neighbors in ascending order, or null, if there are none.
+   * @param similaritiesByTokenId The corresponding similarities.
+   */
+  private NeighborLists(final int[][] neighborIdsByTokenId,
+                        final double[][] similaritiesByTokenId)
+  {
+    offsets = new int[neighborIdsByTokenId.length + 1];
+    int count = 0;
+    for (int tokenId = 0; tokenId < neighborIdsByTokenId.length; tokenId++) {
+      offsets[tokenId] = count;
+      if (neighborIdsByTokenId[tokenId] != null) {
+        count += neighborIdsByTokenId[tokenId].length;
+      }
+    }
+    offsets[neighborIdsByTokenId.length] = count;
+    neighborIds = new int[count];
+    similarities = new double[count];
+    for (int tokenId = 0; tokenId < neighborIdsByTokenId.length; tokenId++) {
+      if (neighborIdsByTokenId[tokenId] != null) {
+        System.arraycopy(neighborIdsByTokenId[tokenId], 0,
+                         neighborIds, offsets[tokenId],
+                         neighborIdsByTokenId[tokenId].length);
+        System.arraycopy(similaritiesByTokenId[tokenId], 0,
+                         similarities, offsets[tokenId],
+                         similaritiesByTokenId[tokenId].length);
+      }
+    }
+  }
+
+  /**
+   * Returns true if neighbors have been computed for the token with
+   * the specified id.  Every vocabulary word has at least itself as
+   * neighbor.
+   */
+  public boolean hasNeighbors(final int tokenId)
+  {
+    return
+      (tokenId >= 0) && (tokenId < offsets.length - 1) &&
+      (offsets[tokenId + 1] > offsets[tokenId]);
+  }
+
+  public int getNeighborsStart(final int tokenId)
+  {
+    return offsets[tokenId];
+  }
+
+  public int getNeighborsEnd(final int tokenId)
+  {
+    return offsets[tokenId + 1];
+  }
+
+  public int getNeighborId(final int neighbor)
+  {
+    return neighborIds[neighbor];
+  }
+
+  public double getSimilarity(final int neighbor)
+  {
+    return similarities[neighbor];
+  }
+
+  public int size()
+  {
+    return neighborIds.length;
+  }
+
+  private static List<Token> getWords(final CompactIndex compactIndex)
+  {
+    final List<Token> words = new ArrayList<Token>();
+    for (final Token token : compactIndex.getTokens()) {
+      if (token.getType() == Token.Type.WORD) {
+        words.add(token);
+      }
+    }
+    return words;
+  }
+
+  private static long computeFingerprint(final List<Token> words)
+  {
+    long fingerprint = words.size();
+    for (final Token word : words) {
+      fingerprint = 31 * fingerprint + word.getId();
+      fingerprint = 31 * fingerprint + word.getValue().hashCode();
+    }
+    return fingerprint;
+  }
+
+  private static void computeBlock(final List<Token> words,
+                                   final int start, final int end,
+                                   final NGramIndex nGramIndex,
+                                   final int[][] neighborIdsByTokenId,
+                                   final double[][] similaritiesByTokenId)
+  {
+    for (int i = start; i < end; i++) {
+      final Token word = words.get(i);
+      final List<Token> candidates = nGramIndex.getCandidates(word);
+      final int[] ids = new int[candidates.size()];
+      final double[] scores = new double[candidates.size()];
+      int count = 0;
+      int rejections = 0;
+      for (final Token candidate : candidates) {
+        if (!word.mayMatch(candidate)) {
+          rejections++;
+          continue;
+        }
+        final double similarity = word.matchScore(candidate);
+        if (similarity != 0.0) {
+          ids[count] = candidate.getId();
+          scores[count] = similarity;
+          count++;
+        }
+      }
+      Token.countPrefilter(candidates.size(), rejections);
+      neighborIdsByTokenId[word.getId()] = Arrays.copyOf(ids, count);
+      similaritiesByTokenId[word.getId()] = Arrays.copyOf(scores, count);
+    }
+  }
+
+  /**
+   * Computes the neighbor lists of all words of the specified index,
+   * in blocks of words that are processed in parallel on all
+   * available processors.
+   */
+  public static NeighborLists compute(final CompactIndex compactIndex,
+                                      final NGramIndex nGramIndex)
+    throws InterruptedException, ExecutionException
+  {
+    final List<Token> words = getWords(compactIndex);
+    final int[][] neighborIdsByTokenId =
+      new int[compactIndex.getTokenIdsCount()][];
+    final double[][] similaritiesByTokenId =
+      new double[compactIndex.getTokenIdsCount()][];
+    final ExecutorService executor =
+      Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    try {
+      final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int start = 0; start < words.size(); start += BLOCK_SIZE) {
+        final int blockStart = start;
+        final int blockEnd = Math.min(start + BLOCK_SIZE, words.size());
+        futures.add(executor.submit(new Callable<Void>() {
+            @Override
+            public Void call()
+            {
+              computeBlock(words, blockStart, blockEnd, nGramIndex,
+                           neighborIdsByTokenId, similaritiesByTokenId);
+              return null;
+            }
+          }));
+      }
+      for (final Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    return new NeighborLists(neighborIdsByTokenId, similaritiesByTokenId);
+  }
+
+  public void write(final Writer writer, final CompactIndex compactIndex)
+    throws IOException
+  {
+    final List<Token> words = getWords(compactIndex);
+    final BufferedWriter out = new BufferedWriter(writer);
+    out.write(HEADER);
+    out.newLine();
+    out.write(VOCABULARY + "\t" + words.size() + "\t" +
+              computeFingerprint(words));
+    out.newLine();
+    for (final Token word : words) {
+      if (!hasNeighbors(word.getId())) {
+        continue;
+      }
+      out.write(word.getValue());
+      final int end = getNeighborsEnd(word.getId());
+      for (int neighbor = getNeighborsStart(word.getId());
+           neighbor < end; neighbor++) {
+        out.write("\t" +
+                  compactIndex.getToken(getNeighborId(neighbor)).getValue() +
+                  "\t" + getSimilarity(neighbor));
+      }
+      out.newLine();
+    }
+    out.flush();
+  }
+
+  private static int resolve(final CompactIndex compactIndex,
+                             final String word)
+    throws ParseException
+  {
+    final Token token = TokenDictionary.GLOBAL.lookup(word);
+    final int tokenId = token != null ? compactIndex.getTokenId(token) : -1;
+    if (tokenId < 0) {
+      throw new ParseException("word not in vocabulary: " + word, 0);
+    }
+    return tokenId;
+  }
+
+  /**
+   * Reads neighbor lists that have been written for the vocabulary of
+   * the specified index.
+   *
+   * @throws ParseException If the data is malformed or has been
+   * computed for a different vocabulary.
+   */
+  public static NeighborLists read(final Reader reader,
+                                   final CompactIndex compactIndex)
+    throws IOException, ParseException
+  {
+    final List<Token> words = getWords(compactIndex);
+    final BufferedReader in = new BufferedReader(reader);
+    if (!HEADER.equals(in.readLine())) {
+      throw new ParseException("missing header", 0);
+    }
+    final String expectedVocabulary =
+      VOCABULARY + "\t" + words.size() + "\t" + computeFingerprint(words);
+    if (!expectedVocabulary.equals(in.readLine())) {
+      throw new ParseException("neighbor lists computed for other vocabulary",
+                               0);
+    }
+    final int[][] neighborIdsByTokenId =
+      new int[compactIndex.getTokenIdsCount()][];
+    final double[][] similaritiesByTokenId =
+      new double[compactIndex.getTokenIdsCount()][];
+    int lineNumber = 2;
+    String line;
+    while ((line = in.readLine()) != null) {
+      lineNumber++;
+      final String[] fields = line.split("\t");
+      if ((fields.length % 2) != 1) {
+        throw new ParseException("malformed line " + lineNumber, 0);
+      }
+      final int tokenId = resolve(compactIndex, fields[0]);
+      final long[] entries = new long[(fields.length - 1) / 2];
+      final double[] scores = new double[entries.length];
+      for (int i = 0; i < entries.length; i++) {
+        try {
+          scores[i] = Double.parseDouble(fields[2 * i + 2]);
+        } catch (final NumberFormatException e) {
+          throw new ParseException("malformed similarity in line " +
+                                   lineNumber + ": " + fields[2 * i + 2], 0);
+        }
+        entries[i] = ((long)resolve(compactIndex, fields[2 * i + 1]) << 32) | i;
+      }
+      Arrays.sort(entries);
+      final int[] ids = new int[entries.length];
+      final double[] sortedScores = new double[entries.length];
+      for (int i = 0; i < entries.length; i++) {
+        ids[i] = (int)(entries[i] >>> 32);
+        sortedScores[i] = scores[(int)entries[i]];
+      }
+      neighborIdsByTokenId[tokenId] = ids;
+      similaritiesByTokenId[tokenId] = sortedScores;
+    }
+    return new NeighborLists(neighborIdsByTokenId, similaritiesByTokenId);
+  }
+
+  /**
+   * Reads the neighbor lists from the specified file, if it exists and
+   * matches the vocabulary of the specified index.  Returns null
+   * otherwise.
+   */
+  public static NeighborLists load(final String filePath,
+                                   final CompactIndex compactIndex)
+  {
+    if (!new File(filePath).isFile()) {
+      return null;
+    }
+    try (final FileReader reader = new FileReader(filePath)) {
+      return read(reader, compactIndex);
+    } catch (final IOException | ParseException e) {
+      System.err.println("ignoring neighbor lists " + filePath + ": " +
+                         e.getMessage());
+      return null;
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return "NeighborLists[#tokens=" + (offsets.length - 1) +
+      ", #neighbors=" + neighborIds.length + "]";
+  }
+
+  /**
+   * Build-time job: computes the neighbor lists for the vocabulary of
+   * the corpus and stores them in a file.
+   *
+   * Usage: NeighborLists [corpus file [neighbor lists file]]
+   */
+  public static void main(final String argv[])
+    throws IOException, ParseException, InterruptedException,
+           ExecutionException
+  {
+    final String corpusPath =
+      argv.length > 0 ? argv[0] : Config.DATABASE_XML_FILE;
+    final String neighborsPath =
+      argv.length > 1 ? argv[1] : Config.NEIGHBORS_FILE;
+    final Index index = new Index();
+    final Sentencizer sentencizer =
+      new SentencizerImpl(new Tokenizer(corpusPath),
+                          new SentenceFilter(Config.SENTENCE_FILTER));
+    while (sentencizer.hasNext()) {
+      index.addSentence(sentencizer.getNext());
+    }
+    index.freeze();
+    final CompactIndex compactIndex = index.getCompactIndex();
+    final long startTime = System.currentTimeMillis();
+    final NeighborLists neighborLists =
+      compute(compactIndex, new NGramIndex(compactIndex.getTokens()));
+    final long stopTime = System.currentTimeMillis();
+    System.out.println("computed " + neighborLists + " in " +
+                       (stopTime - startTime) + "ms");
+    System.out.println("prefilter rejected " +
+                       Token.getPrefilterRejections() + " of " +
+                       Token.getPrefilterTests() + " word pairs");
+    try (final FileWriter writer = new FileWriter(neighborsPath)) {
+      neighborLists.write(writer, compactIndex);
+    }
+    System.out.println("wrote " + neighborsPath);
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
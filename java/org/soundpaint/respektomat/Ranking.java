@@ -0,0 +1,86 @@
+/*
+ * @(#)Ranking.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The best candidates found for a query, best first, together with a
+ * flag that tells whether they are the exact result or only the best
+ * found until a deadline passed.
+ */
+public class Ranking
+{
+  private final List<Candidate> candidates;
+  private final boolean exact;
+
+  private Ranking()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  public Ranking(final List<Candidate> candidates, final boolean exact)
+  {
+    if (candidates == null) {
+      throw new NullPointerException("candidates");
+    }
+    this.candidates = Collections.unmodifiableList(candidates);
+    this.exact = exact;
+  }
+
+  public List<Candidate> getCandidates()
+  {
+    return candidates;
+  }
+
+  /**
+   * Returns the best candidate sentence, or Sentence.EOF, if there
+   * are no candidates at all.
+   */
+  public Sentence getBest()
+  {
+    return !candidates.isEmpty() ? candidates.get(0).getSentence() :
+      Sentence.EOF;
+  }
+
+  /**
+   * Returns false, if scoring has been cut short by a deadline, such
+   * that better candidates may have been missed.
+   */
+  public boolean isExact()
+  {
+    return exact;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "Ranking[#candidates=" + candidates.size() +
+      ", exact=" + exact + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -0,0 +1,142 @@
+/*
+ * @(#)RawTerminal.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Switches the controlling terminal into non-canonical mode without
+ * echo, such that input is delivered character by character as it is
+ * typed, rather than line by line after the user has pressed enter.
+ * Echoing and line editing are left to the application.  The previous
+ * terminal settings are restored on close or, at the latest, when the
+ * virtual machine shuts down, e.g. upon Ctrl-C.  Relies on the stty
+ * command and /dev/tty, i.e. on a Unix-like system.
+ */
+public class RawTerminal implements Closeable
+{
+  private final String savedSettings;
+  private final Reader reader;
+  private final Thread restoreHook;
+  private boolean closed;
+
+  private RawTerminal()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  public RawTerminal(final InputStream in) throws IOException
+  {
+    if (in == null) {
+      throw new NullPointerException("in");
+    }
+    savedSettings = stty("-g").trim();
+    stty("-icanon -echo min 1");
+    reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+    restoreHook = new Thread() {
+        @Override
+        public void run()
+        {
+          restore();
+        }
+      };
+    Runtime.getRuntime().addShutdownHook(restoreHook);
+    closed = false;
+  }
+
+  private static String stty(final String arguments) throws IOException
+  {
+    final Process process =
+      new ProcessBuilder("sh", "-c", "stty " + arguments + " < /dev/tty").
+      redirectErrorStream(true).start();
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final InputStream in = process.getInputStream();
+    final byte[] buffer = new byte[256];
+    int count;
+    while ((count = in.read(buffer)) >= 0) {
+      output.write(buffer, 0, count);
+    }
+    final int exitValue;
+    try {
+      exitValue = process.waitFor();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while running stty " + arguments);
+    }
+    final String result = output.toString(StandardCharsets.UTF_8.name());
+    if (exitValue != 0) {
+      throw new IOException("stty " + arguments + " failed: " + result);
+    }
+    return result;
+  }
+
+  private synchronized void restore()
+  {
+    if (!closed) {
+      closed = true;
+      try {
+        stty(savedSettings);
+      } catch (final IOException e) {
+        System.err.println("failed restoring terminal settings: " +
+                           e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Returns the next character typed, blocking until there is one, or
+   * -1 at the end of input.
+   */
+  public int read() throws IOException
+  {
+    return reader.read();
+  }
+
+  @Override
+  public void close()
+  {
+    restore();
+    try {
+      Runtime.getRuntime().removeShutdownHook(restoreHook);
+    } catch (final IllegalStateException e) {
+      // already shutting down; the hook restores nothing anymore
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return "RawTerminal[savedSettings=" + savedSettings +
+      ", closed=" + closed + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -0,0 +1,709 @@
+/*
+ * @(#)ReferenceScorer.java 1.00 19/11/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The original scoring engine of Respektomat: Each token of the
+ * incomplete sentence is expanded to its fuzzy matches in the
+ * vocabulary of the corpus, and each sentence is scored by the sum of
+ * the similarities of the matches that it contains, weighted by their
+ * term frequency and by the inverse length of the sentence, plus the
+ * history penalty.  The optional strategies of finding the best
+ * sentences, selected by Config, all yield this ranking, except where
+ * noted otherwise.  They are implemented by the package-private
+ * classes VocabularyMatcher, MatchScoring, MaxScorePruning,
+ * CascadeScoring, MinHashScoring, CategoryPartitions and
+ * ResponseCache, which this class wires up according to Config.
+ */
+public class ReferenceScorer implements Scorer
+{
+  /**
+   * Treatment of matches of tokens that occur in more than
+   * Config.HIGH_DF_PERCENT percent of all sentences, such as "und" or
+   * "der".  Walking their long postings dominates the scoring time,
+   * while they hardly discriminate between sentences.
+   */
+  public enum HighDfPolicy
+  {
+    /**
+     * Scores them like any other match.
+     */
+    NONE,
+
+    /**
+     * Drops them from the expanded query.
+     */
+    SKIP,
+
+    /**
+     * Caps their impact by scaling their match score with the ratio
+     * of the document frequency threshold to their document
+     * frequency.  Since matches are processed in order of impact when
+     * pruning or scoring against a deadline, they are processed last
+     * there.
+     */
+    CAP
+  };
+
+  private static final String NL = System.lineSeparator();
+  private static final int PROXIMITY_WINDOW = 3;
+  private static final int PROXIMITY_POOL_FACTOR = 4;
+
+  /**
+   * Score of a sentence of the requested category, if there is no
+   * incomplete sentence to match; the negative of it for all other
+   * sentences.
+   */
+  static final double CATEGORY_BONUS = 1e5;
+
+  private final Index index;
+  private final List<Sentence> sentences;
+  private final int[] tokensCounts;
+  private final VocabularyMatcher matcher;
+  private final MatchScoring matchScoring;
+  private final CategoryPartitions categoryPartitions;
+  private final ResponseCache responseCache;
+  private final CascadeScoring cascadeScoring;
+  private final MinHashScoring minHashScoring;
+
+  private ReferenceScorer()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  /**
+   * @param sentences The corpus, with each sentence at the position of
+   * its index id.
+   */
+  public ReferenceScorer(final List<Sentence> sentences)
+  {
+    if (sentences == null) {
+      throw new NullPointerException("sentences");
+    }
+    index = new Index();
+    this.sentences = new ArrayList<Sentence>(sentences);
+    for (final Sentence sentence : this.sentences) {
+      index.addSentence(sentence);
+    }
+    index.freeze();
+    tokensCounts = new int[sentences.size()];
+    for (final Sentence sentence : sentences) {
+      tokensCounts[sentence.getIndexId()] = sentence.getTokensCount();
+    }
+    if (Config.DEBUG) {
+      System.out.println("summary of index:");
+      System.out.println(index.createSummary());
+      System.out.println("#sentences: " + sentences.size());
+    }
+    final CompactIndex compactIndex = index.getCompactIndex();
+    matcher = new VocabularyMatcher(index);
+    matchScoring = new MatchScoring(compactIndex, this.sentences, tokensCounts);
+    categoryPartitions = new CategoryPartitions(this.sentences);
+    final int responseCacheCapacity = Config.RESPONSE_CACHE_CAPACITY;
+    responseCache =
+      responseCacheCapacity > 0 ?
+      new ResponseCache(responseCacheCapacity, sentences.size(), matcher,
+                        matchScoring) :
+      null;
+    cascadeScoring =
+      Config.CASCADE_RANKING ?
+      new CascadeScoring(compactIndex, matcher, matchScoring, tokensCounts) :
+      null;
+    minHashScoring =
+      Config.MIN_HASH_BANDS > 0 ?
+      new MinHashScoring(this.sentences, matcher, matchScoring) : null;
+    if (Config.DEBUG) {
+      System.out.println(minHashScoring);
+      System.out.println("press <enter> to continue...");
+      System.console().readLine();
+    }
+  }
+
+  private double computeScore(final Sentence sentence,
+                              final Sentence incompleteSentence,
+                              final Sentence.Category category,
+                              final History history)
+  {
+    double score = 0.0;
+    if (incompleteSentence == null) {
+       score +=
+         (sentence.getCategory() == category) ?
+         CATEGORY_BONUS : -CATEGORY_BONUS;
+    } else {
+      final double tokenRelevance = 1.0 / sentence.getTokensCount();
+      long tests = 0;
+      long rejections = 0;
+      for (final Token token : incompleteSentence.getTokens()) {
+        for (final Token indexedToken : index.getTokens()) {
+          tests++;
+          if (!token.mayMatch(indexedToken)) {
+            rejections++;
+            continue;
+          }
+          final double tokenScore =
+            matcher.weighMatch(indexedToken,
+                               token.matchScore(indexedToken) *
+                               token.getValue().length());
+          if (tokenScore != 0.0) {
+            final IndexForToken indexForToken =
+              index.getIndexForToken(indexedToken);
+            final IndexForTokenInSentence indexForTokenInSentence =
+              indexForToken.getIndexForTokenInSentence(sentence);
+            if (indexForTokenInSentence != null) {
+              score +=
+                tokenScore * tokenRelevance * indexForTokenInSentence.count();
+            }
+          }
+        }
+      }
+      Token.countPrefilter(tests, rejections);
+    }
+    score += history.getScore(sentence);
+    return score;
+  }
+
+  /**
+   * Term-at-a-time scoring of a query that is still being typed: The
+   * matches of each token are accumulated as soon as the token is
+   * complete, such that finishing the query only requires its last
+   * tokens to be accumulated.  Since tokens are accumulated in query
+   * order, the final scores are exactly those of suggestCandidates().
+   * Uses accumulators of its own, such that other queries may be
+   * scored meanwhile.  Created by createPartialQuery().
+   */
+  private class IncrementalQuery implements PartialQuery
+  {
+    private final double[] partialScores;
+    private final int[] touchedIds;
+    private final List<Token> tokens;
+    private final List<TokenMatch> expandedQuery;
+    private int touchedCount;
+
+    private IncrementalQuery()
+    {
+      partialScores = new double[sentences.size()];
+      touchedIds = new int[sentences.size()];
+      tokens = new ArrayList<Token>();
+      expandedQuery = new ArrayList<TokenMatch>();
+      touchedCount = 0;
+    }
+
+    private void clear()
+    {
+      for (int i = 0; i < touchedCount; i++) {
+        partialScores[touchedIds[i]] = 0.0;
+      }
+      touchedCount = 0;
+      tokens.clear();
+      expandedQuery.clear();
+    }
+
+    /**
+     * Accumulates the matches of those of the specified tokens that
+     * have not been accumulated yet.  Starts over, if the tokens
+     * accumulated so far are not a prefix of the specified ones
+     * anymore, e.g. since the line has been edited.
+     */
+    private void advance(final List<Token> completedTokens)
+    {
+      if ((completedTokens.size() < tokens.size()) ||
+          !completedTokens.subList(0, tokens.size()).equals(tokens)) {
+        clear();
+      }
+      final CompactIndex compactIndex = index.getCompactIndex();
+      for (int token = tokens.size(); token < completedTokens.size();
+           token++) {
+        for (final TokenMatch match :
+               matcher.matchVocabulary(completedTokens.get(token))) {
+          final int tokenId = match.getToken().getId();
+          final int postingsEnd = compactIndex.getPostingsEnd(tokenId);
+          for (int posting = compactIndex.getPostingsStart(tokenId);
+               posting < postingsEnd; posting++) {
+            final int sentenceId = compactIndex.getSentenceId(posting);
+            if (partialScores[sentenceId] == 0.0) {
+              touchedIds[touchedCount++] = sentenceId;
+            }
+            final double tokenRelevance = 1.0 / tokensCounts[sentenceId];
+            partialScores[sentenceId] +=
+              match.getScore() * tokenRelevance *
+              compactIndex.getTermFrequency(posting);
+          }
+          expandedQuery.add(match);
+        }
+        tokens.add(completedTokens.get(token));
+      }
+    }
+
+    /**
+     * Accumulates all tokens of the line typed so far, except for the
+     * last one, unless it is followed by white space, since it may
+     * still grow.  Does nothing, if the line can not be parsed yet.
+     */
+    @Override
+    public void update(final String line)
+    {
+      final Sentence sentence;
+      try {
+        sentence = SentencizerImpl.parseIncomplete(line);
+      } catch (final Exception e) {
+        return;
+      }
+      final List<Token> completedTokens = new ArrayList<Token>();
+      for (final Token token : sentence.getTokens()) {
+        completedTokens.add(token);
+      }
+      if (!completedTokens.isEmpty() && !line.isEmpty() &&
+          !Character.isWhitespace(line.charAt(line.length() - 1))) {
+        completedTokens.remove(completedTokens.size() - 1);
+      }
+      advance(completedTokens);
+    }
+
+    /**
+     * Accumulates the remaining tokens of the specified sentence,
+     * i.e. the parsed complete line, returns its k best continuations
+     * like suggestCandidates(), and starts over with an empty query.
+     */
+    @Override
+    public List<Candidate> finish(final Sentence incompleteSentence,
+                                  final Sentence.Category category,
+                                  final int k, final History history)
+    {
+      final List<Token> allTokens = new ArrayList<Token>();
+      for (final Token token : incompleteSentence.getTokens()) {
+        allTokens.add(token);
+      }
+      advance(allTokens);
+      final List<Candidate> candidates;
+      if (sentences.isEmpty() || (k <= 0)) {
+        candidates = new ArrayList<Candidate>();
+      } else {
+        final TopKHeap heap = new TopKHeap(getPoolSize(k));
+        for (int i = 0; i < touchedCount; i++) {
+          final int sentenceId = touchedIds[i];
+          heap.offer(sentenceId, partialScores[sentenceId] +
+                     history.getScore(sentenceId));
+        }
+        matchScoring.offerUntouched(heap, expandedQuery, history);
+        candidates =
+          addProximityBonus(incompleteSentence,
+                            matchScoring.drainCandidates(heap), k);
+      }
+      clear();
+      return candidates;
+    }
+  }
+
+  /**
+   * Returns a new partial query that accumulates the matches of the
+   * query while it is being typed, if term-at-a-time scoring is
+   * enabled.  Otherwise, the query is scored once it is finished.
+   */
+  @Override
+  public PartialQuery createPartialQuery()
+  {
+    return
+      Config.TERM_AT_A_TIME_SCORING ?
+      new IncrementalQuery() : Scorer.super.createPartialQuery();
+  }
+
+  /**
+   * Returns the cache of vocabulary matches per query word, e.g. for
+   * inspecting its hit and miss counters.
+   */
+  public LfuCache<String, List<TokenMatch>> getMatchCache()
+  {
+    return matcher.getMatchCache();
+  }
+
+  /**
+   * Returns the cache of rankings per query, e.g. for inspecting its
+   * hit rate, or null, if response caching is disabled.
+   */
+  public LfuCache<?, List<Candidate>> getResponseCache()
+  {
+    return responseCache != null ? responseCache.getCache() : null;
+  }
+
+  @Override
+  public synchronized List<Candidate>
+    suggestCandidates(final Sentence incompleteSentence,
+                      final Sentence.Category category,
+                      final int k, final History history)
+  {
+    if (history == null) {
+      throw new NullPointerException("history");
+    }
+    if (sentences.isEmpty() || (k <= 0)) {
+      return new ArrayList<Candidate>();
+    }
+    if (incompleteSentence == null) {
+      final TopKHeap heap =
+        categoryPartitions.score(category, Math.min(k, sentences.size()),
+                                 history);
+      return matchScoring.drainCandidates(heap);
+    }
+    final int poolSize = getPoolSize(k);
+    final TopKHeap heap =
+      isScoredIndividually() || (responseCache == null) ?
+      scoreIndividually(incompleteSentence, category, poolSize, history) :
+      responseCache.score(incompleteSentence, poolSize, history);
+    return addProximityBonus(incompleteSentence,
+                             matchScoring.drainCandidates(heap), k);
+  }
+
+  /**
+   * Returns true, if queries are not scored by MatchScoring.scoreAll(),
+   * but by one of the alternatives, such that they can neither share a
+   * pass over the postings nor the response cache.
+   */
+  private boolean isScoredIndividually()
+  {
+    return
+      !Config.TERM_AT_A_TIME_SCORING || (cascadeScoring != null) ||
+      (minHashScoring != null);
+  }
+
+  private TopKHeap scoreIndividually(final Sentence incompleteSentence,
+                                     final Sentence.Category category,
+                                     final int k, final History history)
+  {
+    if (!Config.TERM_AT_A_TIME_SCORING) {
+      return scoreEachSentence(incompleteSentence, category, k, history);
+    }
+    if (cascadeScoring != null) {
+      return cascadeScoring.score(incompleteSentence, k, history);
+    }
+    if (minHashScoring != null) {
+      return minHashScoring.score(incompleteSentence, k, history);
+    }
+    return matchScoring.scoreAll(matcher.expandQuery(incompleteSentence), k,
+                                 history);
+  }
+
+  /**
+   * Returns the number of candidates to rank for returning the k best
+   * of them, which is larger than k, if the proximity bonus is to be
+   * added to the candidates afterwards.
+   */
+  private int getPoolSize(final int k)
+  {
+    final long poolSize =
+      Config.PROXIMITY_BONUS ? (long)PROXIMITY_POOL_FACTOR * k : k;
+    return (int)Math.min(poolSize, sentences.size());
+  }
+
+  /**
+   * If Config.PROXIMITY_BONUS is set, adds to the score of each of the
+   * specified candidates a bonus for each pair of consecutive matched
+   * tokens of the incomplete sentence that match words at most
+   * PROXIMITY_WINDOW positions apart within the candidate, and
+   * returns the k best candidates thereafter.  The bonus of a pair is
+   * the lower of the two match scores, divided by the distance and,
+   * like any contribution, by the length of the candidate; if several
+   * matches of the two tokens are close, the largest bonus counts.
+   * Thus, adjacent words score about as much as one more occurrence of
+   * a matched word.  The positions are merged for the candidates only,
+   * which have been ranked without bonus beforehand, taking
+   * PROXIMITY_POOL_FACTOR times as many as requested, such that the
+   * bonus reorders them, but never pulls in any other sentence.
+   */
+  private List<Candidate> addProximityBonus(final Sentence incompleteSentence,
+                                            final List<Candidate> candidates,
+                                            final int k)
+  {
+    if (!Config.PROXIMITY_BONUS || candidates.isEmpty()) {
+      return candidates;
+    }
+    final List<List<TokenMatch>> matchesPerToken =
+      new ArrayList<List<TokenMatch>>();
+    for (final Token token : incompleteSentence.getTokens()) {
+      final List<TokenMatch> matches = matcher.matchVocabulary(token);
+      if (!matches.isEmpty()) {
+        matchesPerToken.add(matches);
+      }
+    }
+    final TopKHeap heap = new TopKHeap(Math.min(k, candidates.size()));
+    for (final Candidate candidate : candidates) {
+      final int sentenceId = candidate.getSentence().getIndexId();
+      heap.offer(sentenceId, candidate.getScore() +
+                 computeProximityBonus(matchesPerToken, sentenceId));
+    }
+    return matchScoring.drainCandidates(heap);
+  }
+
+  /**
+   * Returns the postings of the matches in the sentence with the
+   * specified id, or -1 for matches that do not occur in it.
+   */
+  private int[] findPostings(final List<TokenMatch> matches,
+                             final int sentenceId)
+  {
+    final CompactIndex compactIndex = index.getCompactIndex();
+    final int[] postings = new int[matches.size()];
+    for (int match = 0; match < postings.length; match++) {
+      postings[match] =
+        compactIndex.findPosting(matches.get(match).getToken().getId(),
+                                 sentenceId);
+    }
+    return postings;
+  }
+
+  private double computeProximityBonus(final List<List<TokenMatch>>
+                                       matchesPerToken,
+                                       final int sentenceId)
+  {
+    final CompactIndex compactIndex = index.getCompactIndex();
+    double bonus = 0.0;
+    int[] postings = null;
+    for (int token = 0; token < matchesPerToken.size(); token++) {
+      final int[] previousPostings = postings;
+      postings = findPostings(matchesPerToken.get(token), sentenceId);
+      if (previousPostings == null) {
+        continue;
+      }
+      final List<TokenMatch> previousMatches =
+        matchesPerToken.get(token - 1);
+      final List<TokenMatch> matches = matchesPerToken.get(token);
+      double pairBonus = 0.0;
+      for (int match1 = 0; match1 < previousPostings.length; match1++) {
+        if (previousPostings[match1] < 0) {
+          continue;
+        }
+        for (int match2 = 0; match2 < postings.length; match2++) {
+          if (postings[match2] < 0) {
+            continue;
+          }
+          final int distance =
+            compactIndex.getMinimumDistance(previousPostings[match1],
+                                            postings[match2]);
+          if (distance <= PROXIMITY_WINDOW) {
+            pairBonus =
+              Math.max(pairBonus,
+                       Math.min(previousMatches.get(match1).getScore(),
+                                matches.get(match2).getScore()) / distance);
+          }
+        }
+      }
+      bonus += pairBonus;
+    }
+    return bonus / tokensCounts[sentenceId];
+  }
+
+  /**
+   * The original sentence-at-a-time scoring, which compares each token
+   * of the incomplete sentence with the whole vocabulary for each
+   * sentence.  Selected by respektomat.sentenceAtATimeScoring, it
+   * serves as reference for the results of the term-at-a-time
+   * strategies.
+   */
+  private TopKHeap scoreEachSentence(final Sentence incompleteSentence,
+                                     final Sentence.Category category,
+                                     final int k, final History history)
+  {
+    final TopKHeap heap = new TopKHeap(k);
+    for (int sentenceId = 0; sentenceId < sentences.size(); sentenceId++) {
+      heap.offer(sentenceId, computeScore(sentences.get(sentenceId),
+                                          incompleteSentence, category,
+                                          history));
+    }
+    return heap;
+  }
+
+  /**
+   * Returns the best candidates found so far, once the specified
+   * deadline has passed.  Scoring always runs on the calling thread.
+   */
+  @Override
+  public synchronized Ranking
+    suggestCandidates(final Sentence incompleteSentence,
+                      final Sentence.Category category,
+                      final int k, final History history,
+                      final long deadline)
+  {
+    if ((incompleteSentence == null) || sentences.isEmpty() || (k <= 0)) {
+      return new Ranking(suggestCandidates(incompleteSentence, category, k,
+                                           history),
+                         true);
+    }
+    final List<TokenMatch> expandedQuery = new ArrayList<TokenMatch>();
+    final boolean expanded =
+      matcher.expandQuery(incompleteSentence, expandedQuery, deadline);
+    final Ranking ranking =
+      matchScoring.scoreWithin(expandedQuery, getPoolSize(k), history,
+                               deadline, expanded);
+    return new Ranking(addProximityBonus(incompleteSentence,
+                                         ranking.getCandidates(), k),
+                       ranking.isExact());
+  }
+
+  /**
+   * Queries that expand to the same matches, e.g. repeated inputs of
+   * conversation logs, share a single pass over the postings, since
+   * their scores only differ by the history penalty.  Distinct queries
+   * are scored one after the other, just like single queries, so this
+   * saves work for repeated queries only.
+   */
+  @Override
+  public synchronized List<List<Candidate>>
+    suggestCandidates(final List<Sentence> incompleteSentences,
+                      final List<History> histories,
+                      final Sentence.Category category, final int k)
+  {
+    if (incompleteSentences == null) {
+      throw new NullPointerException("incompleteSentences");
+    }
+    if (histories == null) {
+      throw new NullPointerException("histories");
+    }
+    if (histories.size() != incompleteSentences.size()) {
+      throw new IllegalArgumentException("histories.size() != " +
+                                         "incompleteSentences.size(): " +
+                                         histories.size() + " != " +
+                                         incompleteSentences.size());
+    }
+    final List<List<Candidate>> results = new ArrayList<List<Candidate>>();
+    if (sentences.isEmpty() || (k <= 0)) {
+      for (int query = 0; query < incompleteSentences.size(); query++) {
+        results.add(new ArrayList<Candidate>());
+      }
+      return results;
+    }
+    final int capacity = Math.min(k, sentences.size());
+    final int poolSize = getPoolSize(k);
+    final Map<List<Token>, List<Integer>> queriesByTokens =
+      new LinkedHashMap<List<Token>, List<Integer>>();
+    for (int query = 0; query < incompleteSentences.size(); query++) {
+      final Sentence incompleteSentence = incompleteSentences.get(query);
+      final History history = histories.get(query);
+      if (history == null) {
+        throw new NullPointerException("histories[" + query + "]");
+      }
+      if (incompleteSentence == null) {
+        final TopKHeap heap =
+          categoryPartitions.score(category, capacity, history);
+        results.add(matchScoring.drainCandidates(heap));
+        continue;
+      }
+      if (isScoredIndividually()) {
+        final TopKHeap heap =
+          scoreIndividually(incompleteSentence, category, poolSize, history);
+        results.add(addProximityBonus(incompleteSentence,
+                                      matchScoring.drainCandidates(heap), k));
+        continue;
+      }
+      final List<Token> matchedTokens =
+        matcher.getMatchedTokens(incompleteSentence);
+      List<Integer> queries = queriesByTokens.get(matchedTokens);
+      if (queries == null) {
+        queries = new ArrayList<Integer>();
+        queriesByTokens.put(matchedTokens, queries);
+      }
+      queries.add(query);
+      results.add(null);
+    }
+    for (final Map.Entry<List<Token>, List<Integer>> entry :
+           queriesByTokens.entrySet()) {
+      final List<TokenMatch> expandedQuery = new ArrayList<TokenMatch>();
+      for (final Token token : entry.getKey()) {
+        expandedQuery.addAll(matcher.matchVocabulary(token));
+      }
+      final List<History> queryHistories = new ArrayList<History>();
+      for (final int query : entry.getValue()) {
+        queryHistories.add(histories.get(query));
+      }
+      final List<TopKHeap> heaps =
+        matchScoring.scoreAll(expandedQuery, poolSize, queryHistories);
+      for (int i = 0; i < heaps.size(); i++) {
+        final int query = entry.getValue().get(i);
+        final List<Candidate> candidates =
+          matchScoring.drainCandidates(heaps.get(i));
+        results.set(query,
+                    addProximityBonus(incompleteSentences.get(query),
+                                      candidates, k));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Measures how well the MinHash index approximates exhaustive
+   * scoring of the specified incomplete sentences, see
+   * MinHashScoring.measureRecall().
+   */
+  public synchronized double
+    measureMinHashRecall(final List<Sentence> incompleteSentences,
+                         final int k)
+  {
+    if (incompleteSentences == null) {
+      throw new NullPointerException("incompleteSentences");
+    }
+    if (k <= 0) {
+      throw new IllegalArgumentException("k <= 0: " + k);
+    }
+    if (minHashScoring == null) {
+      throw new IllegalStateException("MinHash index disabled, " +
+                                      "set respektomat.minHashBands");
+    }
+    return minHashScoring.measureRecall(incompleteSentences, k);
+  }
+
+  /**
+   * Returns the counters of the caches and of the enabled scoring
+   * strategies, one per line.
+   */
+  @Override
+  public String createStatistics()
+  {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("match cache: " + matcher.getMatchCache() + NL);
+    sb.append("response cache: " + responseCache + NL);
+    sb.append(matchScoring.createStatistics() + NL);
+    if (cascadeScoring != null) {
+      sb.append(cascadeScoring.createStatistics() + NL);
+    }
+    if (minHashScoring != null) {
+      sb.append(minHashScoring.createStatistics() + NL);
+    }
+    sb.append("prefilter rejections: " +
+              Token.getPrefilterRejections() + " of " +
+              Token.getPrefilterTests() + " word pairs" + NL);
+    return sb.toString();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "ReferenceScorer[index=" + index +
+      ", #sentences=" + sentences.size() + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -24,13 +24,35 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
+/**
+ * The dialog: Reads the corpus, ranks continuations of the user's
+ * input with the scoring engine selected by Config.SCORING_ENGINE, and
+ * keeps the history of the sentences suggested so far.
+ */
 public class Respektomat
 {
+  /**
+   * Scoring engines, one of which is selected by
+   * Config.SCORING_ENGINE for the dialog.
+   */
+  public enum Engine
+  {
+    /**
+     * Fuzzy matching of the query tokens against the indexed tokens,
+     * see ReferenceScorer.
+     */
+    REFERENCE,
+
+    /**
+     * Cosine similarity of hashed character n-gram vectors, see
+     * HashedVectorScorer.
+     */
+    HASHED_VECTOR
+  };
+
   private static final String ESC = "\u001b";
   private static final String CSI = ESC + "[";
   private static final String ANSI_CLEAR_SCREEN = CSI + "2J";
@@ -50,8 +72,8 @@ public class Respektomat
   private static final String ANSI_PC = ANSI_NORMAL + ANSI_FG_CYAN;
   private static final String ANSI_PLAIN = ANSI_NORMAL + ANSI_FG_WHITE;
 
-  private final Index index;
   private final List<Sentence> sentences;
+  private final Scorer scorer;
   private final History history;
 
   private Respektomat()
@@ -87,83 +109,223 @@ public class Respektomat
   public Respektomat(final Sentencizer sentencizer)
     throws IOException, ParseException
   {
-    index = new Index();
-    sentences = new ArrayList<Sentence>();
+    sentences = readSentences(sentencizer);
+    scorer = createScorer(Config.SCORING_ENGINE, sentences);
+    history = new History();
+    if (Config.DEBUG) {
+      System.out.println("scorer: " + scorer);
+    }
+  }
+
+  /**
+   * Reads all sentences of the specified sentencizer and assigns them
+   * their positions as index ids.
+   */
+  private static List<Sentence> readSentences(final Sentencizer sentencizer)
+    throws IOException, ParseException
+  {
+    final List<Sentence> sentences = new ArrayList<Sentence>();
     while (sentencizer.hasNext()) {
       final Sentence sentence = sentencizer.getNext();
-      index.addSentence(sentence);
+      sentence.setIndexId(sentences.size());
       sentences.add(sentence);
     }
-    if (Config.DEBUG) {
-      System.out.println("summary of index:");
-      System.out.println(index.createSummary());
-      System.out.println("#sentences: " + sentences.size());
-      System.out.println("press <enter> to continue...");
-      System.console().readLine();
+    return Collections.unmodifiableList(sentences);
+  }
+
+  /**
+   * Returns the sentences of the corpus in the specified file, as read
+   * by the dialog, with their positions as index ids.
+   */
+  public static List<Sentence> readCorpus(final String filePath)
+    throws IOException, ParseException
+  {
+    final Sentencizer sentencizer =
+      new SentencizerImpl(new Tokenizer(filePath),
+                          new SentenceFilter(Config.SENTENCE_FILTER));
+    return readSentences(sentencizer);
+  }
+
+  /**
+   * Returns a new scorer of the specified engine over the specified
+   * sentences, each at the position of its index id.  Scorers do not
+   * share any state, in particular no caches.
+   */
+  public static Scorer createScorer(final Engine engine,
+                                    final List<Sentence> sentences)
+  {
+    if (engine == null) {
+      throw new NullPointerException("engine");
+    }
+    switch (engine) {
+    case REFERENCE:
+      return new ReferenceScorer(sentences);
+    case HASHED_VECTOR:
+      return new HashedVectorScorer(sentences, Config.VECTOR_DIMENSION);
+    default:
+      throw new IllegalArgumentException("unsupported engine: " + engine);
     }
-    history = new History();
   }
 
-  private double computeScore(final Sentence sentence,
-                              final Sentence incompleteSentence,
-                              final Sentence.Category category)
+  public List<Sentence> getSentences()
   {
-    double score = 0.0;
-    if (incompleteSentence == null) {
-       score += (sentence.getCategory() == category) ? 1e5 : -1e5;
-    } else {
-      final double tokenRelevance = 1.0 / sentence.getTokensCount();
-      for (final Token token : incompleteSentence.getTokens()) {
-        for (final Token indexedToken : index.getTokens()) {
-          final double tokenScore =
-            token.matchScore(indexedToken) * token.getValue().length();
-          if (tokenScore != 0.0) {
-            final IndexForToken indexForToken =
-              index.getIndexForToken(indexedToken);
-            final IndexForTokenInSentence indexForTokenInSentence =
-              indexForToken.getIndexForTokenInSentence(sentence);
-            if (indexForTokenInSentence != null) {
-              score +=
-                tokenScore * tokenRelevance * indexForTokenInSentence.count();
-            }
-          }
-        }
-      }
+    return sentences;
+  }
+
+  /**
+   * Returns the scorer that ranks the continuations in the dialog, as
+   * selected by Config.SCORING_ENGINE.
+   */
+  public Scorer getScorer()
+  {
+    return scorer;
+  }
+
+  /**
+   * Returns the k best continuations of the incomplete sentence,
+   * best first, with the penalty of the dialog history.  If
+   * incompleteSentence is null, the best sentences of the specified
+   * category are returned.
+   */
+  public List<Candidate> suggestCandidates(final Sentence incompleteSentence,
+                                           final Sentence.Category category,
+                                           final int k)
+  {
+    return scorer.suggestCandidates(incompleteSentence, category, k, history);
+  }
+
+  private void printCandidates(final List<Candidate> candidates)
+  {
+    System.out.print(scorer.createStatistics());
+    for (final Candidate candidate : candidates) {
+      System.out.println(ANSI_FG_GREEN + candidate.getScore() + " " +
+                         ANSI_PLAIN + candidate.getSentence());
     }
-    score += history.getScore(sentence);
-    return score;
   }
 
   public Sentence suggestContinuation(final Sentence incompleteSentence,
                                       final Sentence.Category category)
   {
-    final Map<Sentence, Double> scores = new TreeMap<Sentence, Double>();
-    for (final Sentence sentence : sentences) {
-      final double score = computeScore(sentence, incompleteSentence, category);
-      scores.put(sentence, score);
-    }
-    final List<Sentence> suggestedSentences = new ArrayList<Sentence>();
-    suggestedSentences.addAll(sentences);
-    suggestedSentences.sort(new Comparator<Sentence>() {
-        @Override
-        public int compare(final Sentence sentence1, final Sentence sentence2) {
-          return
-            (int)(Math.signum(scores.get(sentence2) - scores.get(sentence1)));
-        }
-      });
+    final List<Candidate> candidates =
+      scorer.suggestCandidates(incompleteSentence, category,
+                               Config.DEBUG ? sentences.size() : 1, history);
     if (Config.DEBUG) {
-      for (final Sentence sentence : suggestedSentences) {
-        System.out.println(ANSI_FG_GREEN + scores.get(sentence) + " " +
-                           ANSI_PLAIN + sentence);
-      }
+      printCandidates(candidates);
     }
-    if (!suggestedSentences.isEmpty()) {
-      return suggestedSentences.get(0);
+    if (!candidates.isEmpty()) {
+      return candidates.get(0).getSentence();
     } else {
       return Sentence.EOF;
     }
   }
 
+  /**
+   * Like suggestContinuation(Sentence, Category), but gives up
+   * searching for a better continuation once the specified deadline,
+   * given as value of System.nanoTime(), has passed.  The returned
+   * ranking tells whether its best sentence is the exact result.
+   * Engines that do not observe deadlines always return exact
+   * rankings.
+   */
+  public Ranking suggestContinuation(final Sentence incompleteSentence,
+                                     final Sentence.Category category,
+                                     final long deadline)
+  {
+    final int k = Config.DEBUG ? sentences.size() : 1;
+    final Ranking ranking =
+      scorer.suggestCandidates(incompleteSentence, category, k, history,
+                               deadline);
+    if (Config.DEBUG) {
+      printCandidates(ranking.getCandidates());
+      System.out.println(ranking);
+    }
+    return ranking;
+  }
+
+  /**
+   * Variant of suggestContinuation(Sentence, Category) for many
+   * incomplete sentences, e.g. for replaying conversation logs: Returns
+   * the best continuation of each of the incomplete sentences, in the
+   * same order, each scored against the history at the same position
+   * of histories.  Like in the dialog, the caller is responsible for
+   * adding the suggestions to the histories.
+   */
+  public List<Sentence>
+    suggestContinuations(final List<Sentence> incompleteSentences,
+                         final List<History> histories,
+                         final Sentence.Category category)
+  {
+    final List<List<Candidate>> results =
+      scorer.suggestCandidates(incompleteSentences, histories, category, 1);
+    final List<Sentence> continuations = new ArrayList<Sentence>();
+    for (final List<Candidate> candidates : results) {
+      continuations.add(!candidates.isEmpty() ?
+                        candidates.get(0).getSentence() : Sentence.EOF);
+    }
+    return continuations;
+  }
+
+  /**
+   * Opens the terminal for character-wise input, or returns null, if
+   * that is not supported, such that input falls back to whole lines.
+   */
+  private static RawTerminal openRawTerminal()
+  {
+    try {
+      return new RawTerminal(System.in);
+    } catch (final IOException e) {
+      System.err.println("incremental input unavailable: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Reads a line from the raw terminal, echoing and editing it, and
+   * keeps the partial query up to date with each character typed.
+   * Returns null at the end of input.
+   */
+  private static String
+    readLine(final RawTerminal terminal,
+             final Scorer.PartialQuery partialQuery)
+    throws IOException
+  {
+    final StringBuilder line = new StringBuilder();
+    while (true) {
+      final int ch = terminal.read();
+      if ((ch < 0) && (line.length() == 0)) {
+        System.out.println();
+        return null;
+      }
+      if ((ch < 0) || (ch == '\n') || (ch == '\r')) {
+        System.out.println();
+        return line.toString();
+      }
+      if ((ch == '\b') || (ch == 0x7f)) {
+        if (line.length() == 0) {
+          continue;
+        }
+        line.setLength(line.length() - 1);
+        System.out.print("\b \b");
+      } else if (ch == 0x1b) {
+        // skip ANSI escape sequence, e.g. as sent by cursor keys
+        int next = terminal.read();
+        if (next == '[') {
+          do {
+            next = terminal.read();
+          } while ((next >= 0) && ((next < 0x40) || (next > 0x7e)));
+        }
+        continue;
+      } else if (ch >= ' ') {
+        line.append((char)ch);
+        System.out.print((char)ch);
+      } else {
+        continue;
+      }
+      System.out.flush();
+      partialQuery.update(line.toString());
+    }
+  }
+
   private void run() throws IOException, ParseException
   {
     System.out.print(ANSI_INIT + ANSI_CLEAR_SCREEN + ANSI_CURSOR_HOME);
@@ -174,19 +336,48 @@ public class Respektomat
     System.out.println("This software is free software licensed by GNU GPLv3.");
     System.out.println();
     System.out.println("Enter random text or 'q' to quit.");
+    final RawTerminal terminal =
+      Config.INCREMENTAL_INPUT ? openRawTerminal() : null;
+    final Scorer.PartialQuery partialQuery =
+      terminal != null ? scorer.createPartialQuery() : null;
     while (true) {
       System.out.print(ANSI_USER + "Du> ");
-      final String unparsedSentence = System.console().readLine();
+      System.out.flush();
+      final String unparsedSentence =
+        terminal != null ?
+        readLine(terminal, partialQuery) : System.console().readLine();
       System.out.print(ANSI_PLAIN);
-      if ("q".equalsIgnoreCase(unparsedSentence)) {
+      if ((unparsedSentence == null) ||
+          "q".equalsIgnoreCase(unparsedSentence)) {
         break;
       }
+      final long deadline =
+        Config.RESPONSE_TIME_BUDGET_MILLIS > 0 ?
+        System.nanoTime() + Config.RESPONSE_TIME_BUDGET_MILLIS * 1000000L :
+        Scorer.NO_DEADLINE;
       Sentence continuedSentence;
       try {
         final Sentence incompleteSentence =
           SentencizerImpl.parseIncomplete(unparsedSentence);
-        continuedSentence =
-          suggestContinuation(incompleteSentence, Sentence.Category.Normal);
+        if (partialQuery != null) {
+          final List<Candidate> candidates =
+            partialQuery.finish(incompleteSentence, Sentence.Category.Normal,
+                                Config.DEBUG ? sentences.size() : 1,
+                                history);
+          if (Config.DEBUG) {
+            printCandidates(candidates);
+          }
+          continuedSentence =
+            !candidates.isEmpty() ?
+            candidates.get(0).getSentence() : Sentence.EOF;
+        } else {
+          continuedSentence =
+            deadline != Scorer.NO_DEADLINE ?
+            suggestContinuation(incompleteSentence,
+                                Sentence.Category.Normal,
+                                deadline).getBest() :
+            suggestContinuation(incompleteSentence, Sentence.Category.Normal);
+        }
       } catch (final Throwable t) {
         continuedSentence =
           suggestContinuation(null, Sentence.Category.NowWhat);
@@ -195,9 +386,19 @@ public class Respektomat
       System.out.println(ANSI_PC + Config.PC_PROMPT + "> " +
                          continuedSentence.prettyPrint() + ANSI_PLAIN);
     }
+    if (terminal != null) {
+      terminal.close();
+    }
     System.out.println("=> Quit");
   }
 
+  @Override
+  public String toString()
+  {
+    return "Respektomat[scorer=" + scorer +
+      ", #sentences=" + sentences.size() + "]";
+  }
+
   public static void main(final String argv[])
     throws IOException, ParseException
   {
@@ -0,0 +1,162 @@
+/*
+ * @(#)ResponseCache.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cache of rankings without history penalty per query, for scoring
+ * repeated queries without another pass over the postings.  The index
+ * is frozen before the first query, so cached rankings never become
+ * stale.
+ */
+class ResponseCache
+{
+  /**
+   * Empty history for scoring without history penalty.
+   */
+  private static final History NO_HISTORY = new History();
+
+  private final VocabularyMatcher matcher;
+  private final MatchScoring matchScoring;
+  private final int sentencesCount;
+  private final LfuCache<ResponseKey, List<Candidate>> cache;
+
+  /**
+   * Key of the response cache: The tokens of a query that have matches
+   * in the vocabulary, in query order, since only these contribute to
+   * the scores, together with the number of candidates ranked.
+   * Thereby, queries that only differ in punctuation or in words
+   * unknown to the vocabulary share their responses.
+   */
+  private static class ResponseKey
+  {
+    private final List<Token> matchedTokens;
+    private final int depth;
+
+    private ResponseKey(final List<Token> matchedTokens, final int depth)
+    {
+      this.matchedTokens = matchedTokens;
+      this.depth = depth;
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+      if (!(obj instanceof ResponseKey)) {
+        return false;
+      }
+      final ResponseKey other = (ResponseKey)obj;
+      return (depth == other.depth) &&
+        matchedTokens.equals(other.matchedTokens);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return 31 * matchedTokens.hashCode() + depth;
+    }
+  }
+
+  private ResponseCache()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  ResponseCache(final int capacity, final int sentencesCount,
+                final VocabularyMatcher matcher,
+                final MatchScoring matchScoring)
+  {
+    if (matcher == null) {
+      throw new NullPointerException("matcher");
+    }
+    if (matchScoring == null) {
+      throw new NullPointerException("matchScoring");
+    }
+    this.matcher = matcher;
+    this.matchScoring = matchScoring;
+    this.sentencesCount = sentencesCount;
+    cache = new LfuCache<ResponseKey, List<Candidate>>(capacity);
+  }
+
+  /**
+   * Returns the underlying cache, e.g. for inspecting its hit rate.
+   */
+  LfuCache<?, List<Candidate>> getCache()
+  {
+    return cache;
+  }
+
+  /**
+   * Like MatchScoring.scoreAll(), but looks up the ranking of the
+   * query without history penalty in the cache, computing and caching
+   * it on a miss, and then only applies the history penalty to the
+   * cached candidates.  The cached ranking holds the k + h best
+   * sentences, with h being the capacity of the history.  Since at
+   * most h sentences are penalized, and penalties are never positive,
+   * the k best sentences with history penalty are all among them.
+   */
+  TopKHeap score(final Sentence incompleteSentence, final int k,
+                 final History history)
+  {
+    final List<TokenMatch> expandedQuery = new ArrayList<TokenMatch>();
+    final List<Token> matchedTokens = new ArrayList<Token>();
+    for (final Token token : incompleteSentence.getTokens()) {
+      final List<TokenMatch> matches = matcher.matchVocabulary(token);
+      if (!matches.isEmpty()) {
+        matchedTokens.add(token);
+        expandedQuery.addAll(matches);
+      }
+    }
+    final ResponseKey key =
+      new ResponseKey(matchedTokens,
+                      Math.min(k + history.getCapacity(), sentencesCount));
+    List<Candidate> ranking = cache.get(key);
+    if (ranking == null) {
+      final TopKHeap rankingHeap =
+        matchScoring.scoreAll(expandedQuery, key.depth, NO_HISTORY);
+      ranking =
+        Collections.unmodifiableList(matchScoring.drainCandidates(rankingHeap));
+      cache.put(key, ranking);
+    }
+    final TopKHeap heap = new TopKHeap(k);
+    for (final Candidate candidate : ranking) {
+      final int sentenceId = candidate.getSentence().getIndexId();
+      heap.offer(sentenceId,
+                 candidate.getScore() + history.getScore(sentenceId));
+    }
+    return heap;
+  }
+
+  @Override
+  public String toString()
+  {
+    return cache.toString();
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -0,0 +1,158 @@
+/*
+ * @(#)Scorer.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ranks the sentences of a corpus as continuations of an incomplete
+ * sentence.
+ */
+public interface Scorer
+{
+  /**
+   * Value of deadline for rankings that must not give up searching.
+   */
+  long NO_DEADLINE = Long.MIN_VALUE;
+
+  /**
+   * A query that is scored while it is being typed, see
+   * createPartialQuery().
+   */
+  interface PartialQuery
+  {
+    /**
+     * Takes notice of the line typed so far.  Scorers may use this
+     * to start scoring before the line is complete.
+     */
+    void update(final String line);
+
+    /**
+     * Returns the k best continuations of the specified sentence,
+     * i.e. the parsed complete line, like suggestCandidates(), and
+     * starts over with an empty query.
+     */
+    List<Candidate> finish(final Sentence incompleteSentence,
+                           final Sentence.Category category,
+                           final int k, final History history);
+  }
+
+  /**
+   * Returns the k best continuations of the incomplete sentence, best
+   * first, with the penalty of the specified history included in their
+   * scores.  If incompleteSentence is null, the best sentences of the
+   * specified category are returned.  If k is not positive, the list
+   * is empty.
+   */
+  List<Candidate> suggestCandidates(final Sentence incompleteSentence,
+                                    final Sentence.Category category,
+                                    final int k, final History history);
+
+  /**
+   * Like suggestCandidates(Sentence, Category, int, History), but may
+   * return the best candidates found so far, once the specified
+   * deadline, given as value of System.nanoTime(), has passed.  The
+   * returned ranking tells whether it is exact.  By default, the
+   * deadline is ignored and the ranking is always exact.
+   */
+  default Ranking suggestCandidates(final Sentence incompleteSentence,
+                                    final Sentence.Category category,
+                                    final int k, final History history,
+                                    final long deadline)
+  {
+    return new Ranking(suggestCandidates(incompleteSentence, category, k,
+                                         history),
+                       true);
+  }
+
+  /**
+   * Variant of suggestCandidates(Sentence, Category, int, History) for
+   * many queries, e.g. for replaying conversation logs: Returns the k
+   * best continuations of each of the incomplete sentences, in the
+   * same order, each scored against the history at the same position
+   * of histories.  The histories are not modified.  By default, the
+   * queries are scored one after the other.
+   */
+  default List<List<Candidate>>
+    suggestCandidates(final List<Sentence> incompleteSentences,
+                      final List<History> histories,
+                      final Sentence.Category category, final int k)
+  {
+    if (incompleteSentences == null) {
+      throw new NullPointerException("incompleteSentences");
+    }
+    if (histories == null) {
+      throw new NullPointerException("histories");
+    }
+    if (histories.size() != incompleteSentences.size()) {
+      throw new IllegalArgumentException("histories.size() != " +
+                                         "incompleteSentences.size(): " +
+                                         histories.size() + " != " +
+                                         incompleteSentences.size());
+    }
+    final List<List<Candidate>> results = new ArrayList<List<Candidate>>();
+    for (int query = 0; query < incompleteSentences.size(); query++) {
+      results.add(suggestCandidates(incompleteSentences.get(query),
+                                    category, k, histories.get(query)));
+    }
+    return results;
+  }
+
+  /**
+   * Returns a new partial query for scoring a query while it is being
+   * typed.  By default, the partial query ignores the line until it
+   * is finished.
+   */
+  default PartialQuery createPartialQuery()
+  {
+    return new PartialQuery() {
+        @Override
+        public void update(final String line)
+        {
+        }
+
+        @Override
+        public List<Candidate> finish(final Sentence incompleteSentence,
+                                      final Sentence.Category category,
+                                      final int k, final History history)
+        {
+          return suggestCandidates(incompleteSentence, category, k,
+                                   history);
+        }
+      };
+  }
+
+  /**
+   * Returns the counters of the scorer, e.g. of its caches, one per
+   * line, or an empty string, if it has none.
+   */
+  default String createStatistics()
+  {
+    return "";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -0,0 +1,277 @@
+/*
+ * @(#)ScorerComparison.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs two scorers side by side on the same queries and reports their
+ * latencies and how often they agree on the best continuation, e.g.
+ * before switching Config.SCORING_ENGINE to another engine.  Both
+ * scorers see the same history for each query: Like in the dialog,
+ * the best continuation suggested by the first scorer is added to the
+ * history after each query.  Which scorer is called first alternates
+ * from query to query, such that neither of them benefits from the
+ * caches warmed up by the other one.
+ */
+public class ScorerComparison
+{
+  private static final String NL = System.lineSeparator();
+  private static final int WARM_UP_ROUNDS = 1;
+
+  private final Scorer scorer1;
+  private final Scorer scorer2;
+  private long[] latencies1;
+  private long[] latencies2;
+  private int agreementsCount;
+
+  private ScorerComparison()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  public ScorerComparison(final Scorer scorer1, final Scorer scorer2)
+  {
+    if (scorer1 == null) {
+      throw new NullPointerException("scorer1");
+    }
+    if (scorer2 == null) {
+      throw new NullPointerException("scorer2");
+    }
+    this.scorer1 = scorer1;
+    this.scorer2 = scorer2;
+    latencies1 = new long[0];
+    latencies2 = new long[0];
+    agreementsCount = 0;
+  }
+
+  /**
+   * Lets both scorers rank the k best continuations of each of the
+   * incomplete sentences, replacing the results of any previous run.
+   * Caches of the scorers, e.g. of ReferenceScorer, survive between
+   * runs, such that repeating a run on the same scorers measures
+   * cache hits rather than scoring.
+   */
+  public void compare(final List<Sentence> incompleteSentences,
+                      final Sentence.Category category, final int k)
+  {
+    if (incompleteSentences == null) {
+      throw new NullPointerException("incompleteSentences");
+    }
+    latencies1 = new long[incompleteSentences.size()];
+    latencies2 = new long[incompleteSentences.size()];
+    agreementsCount = 0;
+    final History history = new History();
+    for (int query = 0; query < incompleteSentences.size(); query++) {
+      final Sentence incompleteSentence = incompleteSentences.get(query);
+      final List<Candidate> candidates1;
+      final List<Candidate> candidates2;
+      final long start = System.nanoTime();
+      if (query % 2 == 0) {
+        candidates1 =
+          scorer1.suggestCandidates(incompleteSentence, category, k, history);
+        final long middle = System.nanoTime();
+        candidates2 =
+          scorer2.suggestCandidates(incompleteSentence, category, k, history);
+        latencies1[query] = middle - start;
+        latencies2[query] = System.nanoTime() - middle;
+      } else {
+        candidates2 =
+          scorer2.suggestCandidates(incompleteSentence, category, k, history);
+        final long middle = System.nanoTime();
+        candidates1 =
+          scorer1.suggestCandidates(incompleteSentence, category, k, history);
+        latencies2[query] = middle - start;
+        latencies1[query] = System.nanoTime() - middle;
+      }
+      final Sentence best1 = getBest(candidates1);
+      if (best1 == getBest(candidates2)) {
+        agreementsCount++;
+      }
+      history.add(best1);
+    }
+    Arrays.sort(latencies1);
+    Arrays.sort(latencies2);
+  }
+
+  private static Sentence getBest(final List<Candidate> candidates)
+  {
+    return !candidates.isEmpty() ? candidates.get(0).getSentence() : null;
+  }
+
+  public int getQueriesCount()
+  {
+    return latencies1.length;
+  }
+
+  /**
+   * Returns the fraction of queries, for which both scorers return
+   * the same best sentence, or none at all, or 0.0, if there have
+   * been no queries.
+   */
+  public double getTopOneAgreement()
+  {
+    if (latencies1.length == 0) {
+      return 0.0;
+    }
+    return (double)agreementsCount / latencies1.length;
+  }
+
+  /**
+   * Returns the latency of the specified percentile of the queries in
+   * milliseconds.
+   */
+  private static double getLatency(final long[] sortedLatencies,
+                                   final double percentile)
+  {
+    if (sortedLatencies.length == 0) {
+      return 0.0;
+    }
+    final int index =
+      (int)Math.ceil(percentile / 100.0 * sortedLatencies.length) - 1;
+    return sortedLatencies[Math.max(index, 0)] / 1e6;
+  }
+
+  private static String createLatencySummary(final Scorer scorer,
+                                             final long[] sortedLatencies)
+  {
+    long total = 0;
+    for (final long latency : sortedLatencies) {
+      total += latency;
+    }
+    return scorer + ": total " + total / 1000000 + "ms, " +
+      "median " + getLatency(sortedLatencies, 50.0) + "ms, " +
+      "p99 " + getLatency(sortedLatencies, 99.0) + "ms, " +
+      "max " + getLatency(sortedLatencies, 100.0) + "ms";
+  }
+
+  public String createReport()
+  {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("#queries: " + getQueriesCount() + NL);
+    sb.append("top-1 agreement: " + getTopOneAgreement() + NL);
+    sb.append(createLatencySummary(scorer1, latencies1) + NL);
+    sb.append(createLatencySummary(scorer2, latencies2) + NL);
+    return sb.toString();
+  }
+
+  /**
+   * Returns the queries read from the specified file, one per line,
+   * or, if queriesPath is null, the first half of the words of each
+   * sentence of the specified corpus, as far as they can be parsed.
+   */
+  static List<Sentence> loadQueries(final List<Sentence> corpus,
+                                    final String queriesPath)
+    throws IOException, ParseException
+  {
+    final List<Sentence> queries = new ArrayList<Sentence>();
+    if (queriesPath != null) {
+      try (final BufferedReader reader =
+           new BufferedReader(new InputStreamReader(
+             new FileInputStream(queriesPath), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (!line.trim().isEmpty()) {
+            queries.add(SentencizerImpl.parseIncomplete(line));
+          }
+        }
+      }
+    } else {
+      for (final Sentence sentence : corpus) {
+        final List<String> words = new ArrayList<String>();
+        for (final Token token : sentence.getTokens()) {
+          if (token.getType() == Token.Type.WORD) {
+            words.add(token.getValue());
+          }
+        }
+        if (words.size() >= 2) {
+          try {
+            queries.add(SentencizerImpl.parseIncomplete(
+              String.join(" ", words.subList(0, words.size() / 2))));
+          } catch (final ParseException e) {
+            // skip words that do not make up a valid query
+          }
+        }
+      }
+    }
+    return queries;
+  }
+
+  /**
+   * Compares two engines on the queries read from the specified file,
+   * one per line, or, if the file is "-" or missing, on the first
+   * half of the words of each corpus sentence.  The engines default
+   * to REFERENCE and HASHED_VECTOR.  The reported run is preceded by
+   * WARM_UP_ROUNDS unreported runs for warming up the virtual machine.
+   * Each run uses new scorers, such that neither engine answers from
+   * caches filled by an earlier run, and comparing an engine with
+   * itself compares two independent instances.
+   *
+   * Usage: ScorerComparison [corpus file [queries file [engine1
+   * [engine2 [k]]]]]
+   */
+  public static void main(final String argv[])
+    throws IOException, ParseException
+  {
+    final String corpusPath =
+      argv.length > 0 ? argv[0] : Config.DATABASE_XML_FILE;
+    final String queriesPath =
+      (argv.length > 1) && !"-".equals(argv[1]) ? argv[1] : null;
+    final Respektomat.Engine engine1 =
+      argv.length > 2 ?
+      Respektomat.Engine.valueOf(argv[2]) : Respektomat.Engine.REFERENCE;
+    final Respektomat.Engine engine2 =
+      argv.length > 3 ?
+      Respektomat.Engine.valueOf(argv[3]) : Respektomat.Engine.HASHED_VECTOR;
+    final int k = argv.length > 4 ? Integer.parseInt(argv[4]) : 1;
+    final List<Sentence> corpus = Respektomat.readCorpus(corpusPath);
+    final List<Sentence> queries = loadQueries(corpus, queriesPath);
+    ScorerComparison comparison = null;
+    for (int round = 0; round <= WARM_UP_ROUNDS; round++) {
+      comparison =
+        new ScorerComparison(Respektomat.createScorer(engine1, corpus),
+                             Respektomat.createScorer(engine2, corpus));
+      comparison.compare(queries, Sentence.Category.Normal, k);
+    }
+    System.out.print(comparison.createReport());
+  }
+
+  @Override
+  public String toString()
+  {
+    return "ScorerComparison[scorer1=" + scorer1 +
+      ", scorer2=" + scorer2 + ", #queries=" + getQueriesCount() + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -36,6 +36,7 @@ public class Sentence implements Comparable<Sentence>
   private final int id;
   private final List<Token> tokens;
   private boolean sealed;
+  private int indexId;
 
   public static final Sentence EOF = new Sentence(Category.Normal).seal();
 
@@ -53,6 +54,7 @@ public class Sentence implements Comparable<Sentence>
     id = idCount++;
     tokens = new ArrayList<Token>();
     sealed = false;
+    indexId = -1;
   }
 
   public Category getCategory()
@@ -83,6 +85,35 @@ public class Sentence implements Comparable<Sentence>
     return sealed;
   }
 
+  /**
+   * Assigns the dense id of this sentence within the corpus that it
+   * belongs to.  Several indices, e.g. of different scorers, may index
+   * the same corpus, as long as they assign the same ids.
+   */
+  public void setIndexId(final int indexId)
+  {
+    if (!sealed) {
+      throw new IllegalStateException("can not index mutable sentence");
+    }
+    if ((this.indexId >= 0) && (this.indexId != indexId)) {
+      throw new IllegalStateException("sentence already indexed with id " +
+                                      this.indexId);
+    }
+    if (indexId < 0) {
+      throw new IllegalArgumentException("indexId < 0: " + indexId);
+    }
+    this.indexId = indexId;
+  }
+
+  /**
+   * Returns the dense id of this sentence within its index, or -1,
+   * if the sentence has not been indexed.
+   */
+  public int getIndexId()
+  {
+    return indexId;
+  }
+
   public Iterable<Token> getTokens()
   {
     return tokens;
@@ -180,7 +180,7 @@ public class SentencizerImpl implements Sentencizer
     throws IOException, ParseException
   {
     final Tokenizer tokenizer =
-      new Tokenizer(new StringReader(incompleteSentence));
+      new Tokenizer(new StringReader(incompleteSentence), false);
     final Sentencizer sentencizer = new SentencizerImpl(tokenizer);
     final Sentence sentence = sentencizer.getNext();
     if (sentencizer.hasNext()) {
@@ -20,38 +20,104 @@
 package org.soundpaint.respektomat;
 
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
 
 public class StringDistance
 {
-  private static String normAndSort(final String x)
+  public static final double CUTOFF = 0.5;
+
+  /**
+   * Returns the signature of the specified string, i.e. its
+   * characters, lower-cased character by character and sorted.  Since
+   * lower-casing is done per character, the length of the signature
+   * always equals that of the string.
+   */
+  public static char[] createSignature(final String x)
   {
-    final char[] chars = x.toLowerCase().toCharArray();
+    final char[] chars = x.toCharArray();
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = Character.toLowerCase(chars[i]);
+    }
     Arrays.sort(chars);
-    return new String(chars);
+    return chars;
+  }
+
+  /**
+   * Returns false, if two strings of the specified lengths can not
+   * reach the cutoff similarity, i.e. if the longer one is more than
+   * three times as long as the shorter one.  Since the number of
+   * common characters can not exceed the length of the shorter
+   * string, and the shift penalty factor can not exceed 1.0, the
+   * similarity is at most 2 * minLength / (minLength + maxLength),
+   * which reaches 0.5 exactly if 3 * minLength >= maxLength.
+   */
+  public static boolean mayReachCutoff(final int xLength, final int yLength)
+  {
+    final int minLength = xLength < yLength ? xLength : yLength;
+    final int maxLength = xLength > yLength ? xLength : yLength;
+    return 3 * minLength >= maxLength;
+  }
+
+  /**
+   * Returns a mask with bit (c % 64) set for each character c of the
+   * specified signature.
+   */
+  public static long createMask(final char[] signature)
+  {
+    long mask = 0;
+    for (final char c : signature) {
+      mask |= 1L << (c & 63);
+    }
+    return mask;
+  }
+
+  /**
+   * Returns false, if two strings with the specified lengths and
+   * masks, as returned by createMask(), can not reach the cutoff
+   * similarity.  Each bit set in the mask of one string only stands
+   * for at least one character without counterpart in the other
+   * string.  Hence, the number of common characters is at most the
+   * length of either string minus its number of such bits, while the
+   * cutoff requires 4 * common >= xLength + yLength.
+   */
+  public static boolean mayReachCutoff(final int xLength, final long xMask,
+                                       final int yLength, final long yMask)
+  {
+    final int xCommon = xLength - Long.bitCount(xMask & ~yMask);
+    final int yCommon = yLength - Long.bitCount(yMask & ~xMask);
+    final int common = xCommon < yCommon ? xCommon : yCommon;
+    return 4 * common >= xLength + yLength;
   }
 
   public static double computeSimilarity(final String x, final String y)
   {
     if (x == null) throw new NullPointerException("x");
     if (y == null) throw new NullPointerException("y");
-    final int minLength = x.length() < y.length() ? x.length() : y.length();
-    final int maxLength = x.length() > y.length() ? x.length() : y.length();
-    final String xN = normAndSort(x);
-    final String yN = normAndSort(y);
+    if (!mayReachCutoff(x.length(), y.length())) {
+      return 0.0;
+    }
+    return computeSimilarity(createSignature(x), createSignature(y));
+  }
+
+  /**
+   * Computes the similarity of two strings from their signatures, as
+   * returned by createSignature(), without allocating any memory.
+   */
+  public static double computeSimilarity(final char[] xN, final char[] yN)
+  {
+    final int minLength = xN.length < yN.length ? xN.length : yN.length;
+    final int maxLength = xN.length > yN.length ? xN.length : yN.length;
+    if (!mayReachCutoff(minLength, maxLength)) {
+      return 0.0;
+    }
     int xNPos = 0;
     int yNPos = 0;
     int scoreN = 0;
     int lastXMatchPos = 0;
     int lastYMatchPos = 0;
     int totalShiftScore = 0;
-    final StringBuilder commonN = new StringBuilder();
-    while ((xNPos < xN.length()) && (yNPos < yN.length())) {
-      final char xNChar = xN.charAt(xNPos);
-      final char yNChar = yN.charAt(yNPos);
+    while ((xNPos < xN.length) && (yNPos < yN.length)) {
+      final char xNChar = xN[xNPos];
+      final char yNChar = yN[yNPos];
       if (xNChar == yNChar) {
         final int shiftScore =
           (xNPos - lastXMatchPos) - (yNPos - lastYMatchPos);
@@ -61,7 +127,6 @@ public class StringDistance
         scoreN++;
         xNPos++;
         yNPos++;
-        commonN.append(xNChar);
       } else if (xNChar < yNChar) {
         xNPos++;
       } else {
@@ -70,7 +135,7 @@ public class StringDistance
     }
     final double score = scoreN * 2.0 / (minLength + maxLength) *
       (1.0 - totalShiftScore * 1.0 / maxLength);
-    return score >= 0.5 ? score : 0.0;
+    return score >= CUTOFF ? score : 0.0;
   }
 
   private static void test(final String x, final String y)
@@ -20,6 +20,9 @@
 package org.soundpaint.respektomat;
 
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Token implements Comparable<Token>
 {
@@ -44,6 +47,16 @@ public class Token implements Comparable<Token>
     WORD
   };
 
+  /**
+   * Id of word tokens that have not been interned by a token
+   * dictionary.
+   */
+  public static final int NO_ID = -1;
+
+  private static final List<Token> nonWordTokens = new ArrayList<Token>();
+  private static final LongAdder prefilterTests = new LongAdder();
+  private static final LongAdder prefilterRejections = new LongAdder();
+
   public static final Token EOF =
     new Token(Type.EOF, "", false, false);
   public static final Token APOSTROPHY =
@@ -84,6 +97,9 @@ public class Token implements Comparable<Token>
   private final Type type;
   private final String value;
   private final boolean spacerLeft, spacerRight;
+  private final int id;
+  private final char[] signature;
+  private final long mask;
 
   private Token()
   {
@@ -103,18 +119,61 @@ public class Token implements Comparable<Token>
     this.value = value;
     this.spacerLeft = spacerLeft;
     this.spacerRight = spacerRight;
+    signature = StringDistance.createSignature(value);
+    mask = StringDistance.createMask(signature);
+    id = nonWordTokens.size();
+    nonWordTokens.add(this);
+  }
+
+  private Token(final String wordText, final int id)
+  {
+    type = Type.WORD;
+    value = wordText;
+    spacerLeft = true;
+    spacerRight = true;
+    this.id = id;
+    signature = StringDistance.createSignature(wordText);
+    mask = StringDistance.createMask(signature);
   }
 
+  /**
+   * Creates a word token that is not interned by any dictionary and
+   * thus has id NO_ID.
+   */
   public static Token createWord(final String wordText) throws ParseException
+  {
+    return createWord(wordText, NO_ID);
+  }
+
+  /**
+   * Creates a word token with the specified id.  To be called only
+   * by the token dictionary.
+   */
+  static Token createWord(final String wordText, final int id)
+    throws ParseException
   {
     final int errorOffset = parseWordText(wordText);
     if (errorOffset >= 0) {
       throw new ParseException("not a valid word: " + wordText, errorOffset);
     }
-    final Token token = new Token(Type.WORD, wordText, true, true);
+    final Token token = new Token(wordText, id);
     return token;
   }
 
+  /**
+   * Returns the number of predefined non-word tokens.  These occupy
+   * the ids 0 up to, but not including, the returned value.
+   */
+  static int getNonWordTokensCount()
+  {
+    return nonWordTokens.size();
+  }
+
+  static Token getNonWordToken(final int id)
+  {
+    return nonWordTokens.get(id);
+  }
+
   /**
    * Returns error offset or -1 if no error occurred.
    */
@@ -127,11 +186,30 @@ public class Token implements Comparable<Token>
     return -1;
   }
 
+  /**
+   * Returns the dense id of this token in the global token
+   * dictionary, or NO_ID for word tokens that have not been interned.
+   */
+  public int getId()
+  {
+    return id;
+  }
+
   public String getValue()
   {
     return value;
   }
 
+  /**
+   * Returns the signature of this token's value, as used for
+   * computing string similarity.  The returned array is shared and
+   * must not be modified.
+   */
+  char[] getSignature()
+  {
+    return signature;
+  }
+
   public Type getType()
   {
     return type;
@@ -147,15 +225,58 @@ public class Token implements Comparable<Token>
     return spacerRight;
   }
 
+  /**
+   * Character mask prefilter of matchScore(): Returns false, if this
+   * and the other token are not both words, or if their lengths and
+   * character masks prove that their similarity stays below the
+   * cutoff, such that matchScore() returns 0.0 without comparing
+   * their characters.
+   */
+  public boolean mayMatch(final Token other)
+  {
+    return
+      (type == Token.Type.WORD) && (other.type == Token.Type.WORD) &&
+      StringDistance.mayReachCutoff(signature.length, mask,
+                                    other.signature.length, other.mask);
+  }
+
   public double matchScore(final Token other)
   {
-    if (type != Token.Type.WORD) {
-      return 0.0;
-    }
-    if (other.type != Token.Type.WORD) {
+    if (!mayMatch(other)) {
       return 0.0;
     }
-    return StringDistance.computeSimilarity(value, other.value);
+    return StringDistance.computeSimilarity(signature, other.signature);
+  }
+
+  /**
+   * Adds the outcome of testing word pairs with mayMatch() to the
+   * prefilter counters.  Called by the loops comparing words once per
+   * loop rather than once per pair, since a shared counter would slow
+   * down the comparisons.
+   */
+  public static void countPrefilter(final long tests, final long rejections)
+  {
+    prefilterTests.add(tests);
+    prefilterRejections.add(rejections);
+  }
+
+  /**
+   * Returns the number of word pairs checked by the character mask
+   * prefilter, as counted by countPrefilter().
+   */
+  public static long getPrefilterTests()
+  {
+    return prefilterTests.sum();
+  }
+
+  /**
+   * Returns the number of word pairs that the character mask
+   * prefilter has rejected without computing their similarity, as
+   * counted by countPrefilter().
+   */
+  public static long getPrefilterRejections()
+  {
+    return prefilterRejections.sum();
   }
 
   @Override
@@ -181,6 +302,10 @@ public class Token implements Comparable<Token>
       return false;
     }
     final Token other = (Token)obj;
+    if ((type == Type.WORD) && (other.type == Type.WORD) &&
+        (id != NO_ID) && (other.id != NO_ID)) {
+      return id == other.id;
+    }
     return compareTo(other) == 0;
   }
 
@@ -193,7 +318,7 @@ public class Token implements Comparable<Token>
   @Override
   public String toString()
   {
-    return "Token[type=" + type + ", value=" + value + "]";
+    return "Token[type=" + type + ", value=" + value + ", id=" + id + "]";
   }
 }
 
@@ -0,0 +1,132 @@
+/*
+ * @(#)TokenDictionary.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns word tokens such that each distinct word is represented by
+ * a single canonical token with a stable, dense int id.  Ids 0 up to
+ * Token.getNonWordTokensCount() - 1 are occupied by the predefined
+ * non-word tokens; words are numbered subsequently in the order they
+ * are interned.
+ */
+public class TokenDictionary
+{
+  public static final TokenDictionary GLOBAL = new TokenDictionary();
+
+  private final Map<String, Token> words;
+  private final List<Token> tokens;
+
+  private TokenDictionary()
+  {
+    words = new HashMap<String, Token>();
+    tokens = new ArrayList<Token>();
+    for (int id = 0; id < Token.getNonWordTokensCount(); id++) {
+      tokens.add(Token.getNonWordToken(id));
+    }
+  }
+
+  /**
+   * Returns the canonical token for the specified word, creating it,
+   * if the word has not yet been interned.
+   */
+  public synchronized Token intern(final String wordText)
+    throws ParseException
+  {
+    if (wordText == null) {
+      throw new NullPointerException("wordText");
+    }
+    Token token = words.get(wordText);
+    if (token == null) {
+      token = Token.createWord(wordText, tokens.size());
+      words.put(wordText, token);
+      tokens.add(token);
+    }
+    return token;
+  }
+
+  /**
+   * Returns the canonical token for the specified token.  Non-word
+   * tokens and interned word tokens are canonical already.
+   */
+  public Token intern(final Token token) throws ParseException
+  {
+    if ((token.getType() != Token.Type.WORD) ||
+        (token.getId() != Token.NO_ID)) {
+      return token;
+    }
+    return intern(token.getValue());
+  }
+
+  /**
+   * Returns the canonical token for the specified word, or null, if
+   * the word has not been interned.
+   */
+  public synchronized Token lookup(final String wordText)
+  {
+    return words.get(wordText);
+  }
+
+  /**
+   * Returns the id of the specified token, resolving non-interned
+   * word tokens by their value, or Token.NO_ID, if the word has not
+   * been interned.
+   */
+  public int lookupId(final Token token)
+  {
+    if (token.getId() != Token.NO_ID) {
+      return token.getId();
+    }
+    final Token canonicalToken = lookup(token.getValue());
+    return canonicalToken != null ? canonicalToken.getId() : Token.NO_ID;
+  }
+
+  public synchronized Token getToken(final int id)
+  {
+    return tokens.get(id);
+  }
+
+  /**
+   * Returns the number of ids assigned so far, including those of the
+   * predefined non-word tokens.
+   */
+  public synchronized int size()
+  {
+    return tokens.size();
+  }
+
+  @Override
+  public synchronized String toString()
+  {
+    return "TokenDictionary[#tokens=" + tokens.size() + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -0,0 +1,67 @@
+/*
+ * @(#)TokenMatch.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+/**
+ * An indexed token that matches some query token, together with the
+ * weighted score of that match.
+ */
+public class TokenMatch
+{
+  private final Token token;
+  private final double score;
+
+  private TokenMatch()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  public TokenMatch(final Token token, final double score)
+  {
+    if (token == null) {
+      throw new NullPointerException("token");
+    }
+    this.token = token;
+    this.score = score;
+  }
+
+  public Token getToken()
+  {
+    return token;
+  }
+
+  public double getScore()
+  {
+    return score;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "TokenMatch[token=" + token + ", score=" + score + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -32,6 +32,7 @@ public class Tokenizer
   private final String resourceId;
   private final PushbackReader pushbackReader;
   private final Deque<Token> lookAhead;
+  private final boolean internWords;
   private int pos;
 
   private Tokenizer()
@@ -61,12 +62,32 @@ public class Tokenizer
 
   public Tokenizer(final PushbackReader pushbackReader,
                    final String resourceId)
+  {
+    this(pushbackReader, resourceId, true);
+  }
+
+  public Tokenizer(final Reader reader, final boolean internWords)
+  {
+    this(new PushbackReader(reader), null, internWords);
+  }
+
+  /**
+   * @param internWords If true, all words read are interned by the
+   * global token dictionary.  Otherwise, words that are already known
+   * to the dictionary are mapped to their canonical token, while
+   * unknown words yield fresh, non-interned tokens, such that the
+   * dictionary does not grow.
+   */
+  public Tokenizer(final PushbackReader pushbackReader,
+                   final String resourceId,
+                   final boolean internWords)
   {
     if (pushbackReader == null) {
       throw new NullPointerException("pushbackReader");
     }
     this.resourceId = resourceId;
     this.pushbackReader = pushbackReader;
+    this.internWords = internWords;
     lookAhead = new ArrayDeque<Token>();
     pos = 0;
   }
@@ -162,6 +183,15 @@ public class Tokenizer
     }
   }
 
+  private Token createWord(final String wordText) throws ParseException
+  {
+    if (internWords) {
+      return TokenDictionary.GLOBAL.intern(wordText);
+    }
+    final Token token = TokenDictionary.GLOBAL.lookup(wordText);
+    return token != null ? token : Token.createWord(wordText);
+  }
+
   private void fillLookAhead() throws IOException, ParseException
   {
     skipWhiteSpace();
@@ -270,7 +300,7 @@ public class Tokenizer
           wordText.append((char)ch);
           // parseState keeps IN_WORD
         } else {
-          token = Token.createWord(wordText.toString());
+          token = createWord(wordText.toString());
           pushbackReader.unread(ch);
           decrementPos(ch);
           parseState = ParseState.STOP;
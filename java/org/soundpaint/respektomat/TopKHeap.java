@@ -0,0 +1,192 @@
+/*
+ * @(#)TopKHeap.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+/**
+ * Bounded heap that keeps the k best of all (sentence id, score)
+ * pairs offered to it, in primitive arrays.  A pair is better than
+ * another one if its score is higher or, for equal scores, if its id
+ * is lower.  The root of the heap is the worst pair kept.
+ */
+public class TopKHeap
+{
+  private final int capacity;
+  private final int[] ids;
+  private final double[] scores;
+  private int size;
+
+  private TopKHeap()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  public TopKHeap(final int capacity)
+  {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity <= 0: " + capacity);
+    }
+    this.capacity = capacity;
+    ids = new int[capacity];
+    scores = new double[capacity];
+    size = 0;
+  }
+
+  public static boolean isBetter(final double score1, final int id1,
+                                 final double score2, final int id2)
+  {
+    return (score1 > score2) || ((score1 == score2) && (id1 < id2));
+  }
+
+  private boolean isBetter(final int index1, final int index2)
+  {
+    return isBetter(scores[index1], ids[index1], scores[index2], ids[index2]);
+  }
+
+  private void swap(final int index1, final int index2)
+  {
+    final int id = ids[index1];
+    ids[index1] = ids[index2];
+    ids[index2] = id;
+    final double score = scores[index1];
+    scores[index1] = scores[index2];
+    scores[index2] = score;
+  }
+
+  private void siftUp(int index)
+  {
+    while (index > 0) {
+      final int parent = (index - 1) / 2;
+      if (!isBetter(parent, index)) {
+        break;
+      }
+      swap(parent, index);
+      index = parent;
+    }
+  }
+
+  private void siftDown(int index)
+  {
+    while (true) {
+      final int left = 2 * index + 1;
+      if (left >= size) {
+        break;
+      }
+      final int right = left + 1;
+      final int worseChild =
+        (right < size) && isBetter(left, right) ? right : left;
+      if (!isBetter(index, worseChild)) {
+        break;
+      }
+      swap(index, worseChild);
+      index = worseChild;
+    }
+  }
+
+  /**
+   * Returns true if a pair with the specified score and id would be
+   * kept if offered now.
+   */
+  public boolean accepts(final int id, final double score)
+  {
+    return (size < capacity) || isBetter(score, id, scores[0], ids[0]);
+  }
+
+  public void offer(final int id, final double score)
+  {
+    if (size < capacity) {
+      ids[size] = id;
+      scores[size] = score;
+      siftUp(size++);
+    } else if (isBetter(score, id, scores[0], ids[0])) {
+      ids[0] = id;
+      scores[0] = score;
+      siftDown(0);
+    }
+  }
+
+  /**
+   * Offers all pairs kept by the specified heap to this heap.
+   */
+  public void merge(final TopKHeap other)
+  {
+    for (int index = 0; index < other.size; index++) {
+      offer(other.ids[index], other.scores[index]);
+    }
+  }
+
+  public int size()
+  {
+    return size;
+  }
+
+  public int getCapacity()
+  {
+    return capacity;
+  }
+
+  public boolean isFull()
+  {
+    return size == capacity;
+  }
+
+  /**
+   * Returns the score of the worst pair kept.  The heap must not be
+   * empty.
+   */
+  public double getWorstScore()
+  {
+    if (size == 0) {
+      throw new IllegalStateException("heap is empty");
+    }
+    return scores[0];
+  }
+
+  /**
+   * Removes all pairs from the heap and stores them, best first, into
+   * the specified arrays, which must provide room for size() pairs.
+   * Returns the number of pairs stored.
+   */
+  public int drain(final int[] sortedIds, final double[] sortedScores)
+  {
+    final int count = size;
+    while (size > 0) {
+      size--;
+      sortedIds[size] = ids[0];
+      sortedScores[size] = scores[0];
+      ids[0] = ids[size];
+      scores[0] = scores[size];
+      siftDown(0);
+    }
+    return count;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "TopKHeap[size=" + size + ", capacity=" + capacity + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
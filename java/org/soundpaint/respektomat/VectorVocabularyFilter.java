@@ -0,0 +1,158 @@
+/*
+ * @(#)VectorVocabularyFilter.java 1.00 30/11/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vocabulary filter that scans the whole vocabulary with the
+ * (incubating) Vector API, checking as many words per instruction as
+ * the preferred vector species has int lanes.
+ *
+ * Each word is represented by a fixed-width histogram of its lower
+ * case characters, folded into BUCKETS buckets.  The histograms are
+ * stored column by column, i.e. one array per bucket holding the
+ * counts of all words, such that a single vector load fetches the
+ * counts of adjacent words.  Summing up the bucket-wise minimum of two
+ * histograms yields an upper bound of the number of characters common
+ * to both words (folding may only merge characters, never separate
+ * them), such that the test of NGramIndex, 4 * common >= x.length() +
+ * y.length(), applied to that bound never drops a word that would
+ * reach the cutoff.
+ *
+ * Requires running with "--add-modules jdk.incubator.vector".
+ */
+public class VectorVocabularyFilter implements VocabularyFilter
+{
+  private static final VectorSpecies<Integer> SPECIES =
+    IntVector.SPECIES_PREFERRED;
+  private static final int BUCKETS = 32;
+
+  private static final Comparator<Token> BY_ID =
+    new Comparator<Token>() {
+      @Override
+      public int compare(final Token token1, final Token token2)
+      {
+        return Integer.compare(token1.getId(), token2.getId());
+      }
+    };
+
+  private final Token[] tokens;
+  private final int[][] histograms;
+  private final int[] lengths;
+
+  private VectorVocabularyFilter()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  public VectorVocabularyFilter(final Iterable<Token> vocabulary)
+  {
+    if (vocabulary == null) {
+      throw new NullPointerException("vocabulary");
+    }
+    final List<Token> words = new ArrayList<Token>();
+    for (final Token token : vocabulary) {
+      if (token.getType() == Token.Type.WORD) {
+        words.add(token);
+      }
+    }
+    Collections.sort(words, BY_ID);
+    tokens = words.toArray(new Token[words.size()]);
+    final int paddedLength =
+      SPECIES.loopBound(tokens.length + SPECIES.length() - 1);
+    histograms = new int[BUCKETS][paddedLength];
+    lengths = new int[paddedLength];
+    // padding words are too long to ever become candidates
+    Arrays.fill(lengths, Integer.MAX_VALUE / 8);
+    for (int ordinal = 0; ordinal < tokens.length; ordinal++) {
+      final char[] signature = tokens[ordinal].getSignature();
+      lengths[ordinal] = signature.length;
+      for (final char c : signature) {
+        histograms[c % BUCKETS][ordinal]++;
+      }
+    }
+  }
+
+  public int size()
+  {
+    return tokens.length;
+  }
+
+  @Override
+  public List<Token> getCandidates(final Token token)
+  {
+    final List<Token> candidates = new ArrayList<Token>();
+    if (token.getType() != Token.Type.WORD) {
+      return candidates;
+    }
+    final char[] signature = token.getSignature();
+    final int[] histogram = new int[BUCKETS];
+    for (final char c : signature) {
+      histogram[c % BUCKETS]++;
+    }
+    final int length = signature.length;
+    for (int ordinal = 0; ordinal < lengths.length;
+         ordinal += SPECIES.length()) {
+      IntVector common = IntVector.zero(SPECIES);
+      for (int bucket = 0; bucket < BUCKETS; bucket++) {
+        if (histogram[bucket] != 0) {
+          common =
+            common.add(IntVector.fromArray(SPECIES, histograms[bucket], ordinal)
+                       .min(histogram[bucket]));
+        }
+      }
+      final IntVector lengthV = IntVector.fromArray(SPECIES, lengths, ordinal);
+      final VectorMask<Integer> mask =
+        common.mul(4).compare(VectorOperators.GE, lengthV.add(length))
+        .and(lengthV.compare(VectorOperators.LE, 3 * length))
+        .and(lengthV.mul(3).compare(VectorOperators.GE, length));
+      long bits = mask.toLong();
+      while (bits != 0) {
+        candidates.add(tokens[ordinal + Long.numberOfTrailingZeros(bits)]);
+        bits &= bits - 1;
+      }
+    }
+    return candidates;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "VectorVocabularyFilter[#tokens=" + tokens.length +
+      ", species=" + SPECIES + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -0,0 +1,44 @@
+/*
+ * @(#)VocabularyFilter.java 1.00 30/11/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.util.List;
+
+/**
+ * Finds the vocabulary words that may reach a similarity of
+ * StringDistance.CUTOFF with a query word.  Implementations must never
+ * drop a word that would reach the cutoff.
+ */
+public interface VocabularyFilter
+{
+  /**
+   * Returns the candidate words for the specified token in order of
+   * ascending token id, or an empty list for non-word tokens.  May be
+   * called concurrently from multiple threads.
+   */
+  List<Token> getCandidates(final Token token);
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */
@@ -0,0 +1,243 @@
+/*
+ * @(#)VocabularyMatcher.java 1.00 26/10/17
+ *
+ * Copyright (C) 2019 Jürgen Reuter
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.soundpaint.respektomat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Expands the tokens of queries to their fuzzy matches in the
+ * vocabulary of an index, weighted according to
+ * Config.HIGH_DF_POLICY, and caches the matches per query word.
+ */
+class VocabularyMatcher
+{
+  private final Index index;
+  private final VocabularyFilter vocabularyFilter;
+  private final NeighborLists neighborLists;
+  private final LfuCache<String, List<TokenMatch>> matchCache;
+  private final int maxDocumentFrequency;
+
+  private VocabularyMatcher()
+  {
+    throw new UnsupportedOperationException("unsupported default constructor");
+  }
+
+  /**
+   * @param index The frozen index of the corpus.
+   */
+  VocabularyMatcher(final Index index)
+  {
+    if (index == null) {
+      throw new NullPointerException("index");
+    }
+    this.index = index;
+    maxDocumentFrequency =
+      (int)((long)index.getSentencesCount() * Config.HIGH_DF_PERCENT / 100);
+    vocabularyFilter = createVocabularyFilter(index.getTokens());
+    neighborLists =
+      NeighborLists.load(Config.NEIGHBORS_FILE, index.getCompactIndex());
+    matchCache =
+      new LfuCache<String, List<TokenMatch>>(Config.MATCH_CACHE_CAPACITY);
+    if (Config.DEBUG) {
+      System.out.println("high df policy: " + Config.HIGH_DF_POLICY);
+      for (final Token token : index.getTokens()) {
+        if (index.getDocumentFrequency(token) > maxDocumentFrequency) {
+          System.out.println("high df token: " + token + ": #" +
+                             index.getTotalFrequency(token) + " in #" +
+                             index.getDocumentFrequency(token) +
+                             " sentences");
+        }
+      }
+      System.out.println(vocabularyFilter);
+      System.out.println(neighborLists);
+    }
+  }
+
+  /**
+   * Creates the Vector API based filter, if configured and supported
+   * by the running VM, and the scalar n-gram index otherwise.  The
+   * vector filter is loaded reflectively, since its class can only be
+   * linked if the incubator module has been added to the VM.
+   */
+  private static VocabularyFilter
+    createVocabularyFilter(final Iterable<Token> vocabulary)
+  {
+    if (Config.VECTOR_VOCABULARY_FILTER) {
+      try {
+        return (VocabularyFilter)
+          Class.forName("org.soundpaint.respektomat.VectorVocabularyFilter")
+          .getConstructor(Iterable.class).newInstance(vocabulary);
+      } catch (final ReflectiveOperationException | LinkageError e) {
+        System.err.println("vector vocabulary filter not available, " +
+                           "falling back to n-gram index: " + e);
+      }
+    }
+    return new NGramIndex(vocabulary);
+  }
+
+  /**
+   * Returns the cache of vocabulary matches per query word.
+   */
+  LfuCache<String, List<TokenMatch>> getMatchCache()
+  {
+    return matchCache;
+  }
+
+  /**
+   * Returns the specified score of a match of the specified indexed
+   * token, adjusted according to Config.HIGH_DF_POLICY, or 0.0, if the
+   * match is to be skipped.
+   */
+  double weighMatch(final Token indexedToken, final double tokenScore)
+  {
+    if (Config.HIGH_DF_POLICY == ReferenceScorer.HighDfPolicy.NONE) {
+      return tokenScore;
+    }
+    final int documentFrequency = index.getDocumentFrequency(indexedToken);
+    if (documentFrequency <= maxDocumentFrequency) {
+      return tokenScore;
+    }
+    if (Config.HIGH_DF_POLICY == ReferenceScorer.HighDfPolicy.SKIP) {
+      return 0.0;
+    }
+    return tokenScore * maxDocumentFrequency / documentFrequency;
+  }
+
+  List<TokenMatch> matchVocabulary(final Token token)
+  {
+    if (token.getType() != Token.Type.WORD) {
+      return Collections.emptyList();
+    }
+    final List<TokenMatch> cachedMatches = matchCache.get(token.getValue());
+    if (cachedMatches != null) {
+      return cachedMatches;
+    }
+    final List<TokenMatch> matches = new ArrayList<TokenMatch>();
+    final CompactIndex compactIndex = index.getCompactIndex();
+    final int tokenId = compactIndex.getTokenId(token);
+    if ((neighborLists != null) && neighborLists.hasNeighbors(tokenId)) {
+      final int end = neighborLists.getNeighborsEnd(tokenId);
+      for (int neighbor = neighborLists.getNeighborsStart(tokenId);
+           neighbor < end; neighbor++) {
+        final Token indexedToken =
+          compactIndex.getToken(neighborLists.getNeighborId(neighbor));
+        final double tokenScore =
+          weighMatch(indexedToken,
+                     neighborLists.getSimilarity(neighbor) *
+                     token.getValue().length());
+        if (tokenScore != 0.0) {
+          matches.add(new TokenMatch(indexedToken, tokenScore));
+        }
+      }
+    } else {
+      final List<Token> candidates = vocabularyFilter.getCandidates(token);
+      int rejections = 0;
+      for (final Token indexedToken : candidates) {
+        if (!token.mayMatch(indexedToken)) {
+          rejections++;
+          continue;
+        }
+        final double tokenScore =
+          weighMatch(indexedToken,
+                     token.matchScore(indexedToken) *
+                     token.getValue().length());
+        if (tokenScore != 0.0) {
+          matches.add(new TokenMatch(indexedToken, tokenScore));
+        }
+      }
+      Token.countPrefilter(candidates.size(), rejections);
+    }
+    final List<TokenMatch> unmodifiableMatches =
+      Collections.unmodifiableList(matches);
+    matchCache.put(token.getValue(), unmodifiableMatches);
+    return unmodifiableMatches;
+  }
+
+  /**
+   * Expands each token of the incomplete sentence to its matches in
+   * the vocabulary, in order of the tokens.
+   */
+  List<TokenMatch> expandQuery(final Sentence incompleteSentence)
+  {
+    final List<TokenMatch> expandedQuery = new ArrayList<TokenMatch>();
+    expandQuery(incompleteSentence, expandedQuery, Scorer.NO_DEADLINE);
+    return expandedQuery;
+  }
+
+  /**
+   * Like expandQuery(Sentence), but stops expanding as soon as the
+   * specified deadline has passed.
+   *
+   * @return True, if all tokens have been expanded.
+   */
+  boolean expandQuery(final Sentence incompleteSentence,
+                      final List<TokenMatch> expandedQuery,
+                      final long deadline)
+  {
+    final Map<Token, List<TokenMatch>> matchesByToken =
+      new HashMap<Token, List<TokenMatch>>();
+    for (final Token token : incompleteSentence.getTokens()) {
+      if (MatchScoring.hasPassed(deadline)) {
+        return false;
+      }
+      List<TokenMatch> matches = matchesByToken.get(token);
+      if (matches == null) {
+        matches = matchVocabulary(token);
+        matchesByToken.put(token, matches);
+      }
+      expandedQuery.addAll(matches);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the tokens of the incomplete sentence that have matches in
+   * the vocabulary, in query order.  Only these contribute to the
+   * scores.
+   */
+  List<Token> getMatchedTokens(final Sentence incompleteSentence)
+  {
+    final List<Token> matchedTokens = new ArrayList<Token>();
+    for (final Token token : incompleteSentence.getTokens()) {
+      if (!matchVocabulary(token).isEmpty()) {
+        matchedTokens.add(token);
+      }
+    }
+    return matchedTokens;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "VocabularyMatcher[vocabularyFilter=" + vocabularyFilter +
+      ", matchCache=" + matchCache + "]";
+  }
+}
+
+/*
+ * Local Variables:
+ *   coding:utf-8
+ *   mode:Java
+ * End:
+ */